@@ -0,0 +1,213 @@
+/**
+ * Content-addressed build result cache for EZ-GEN
+ *
+ * Users resubmit the same form while iterating on branding. The cache key is a hash of the
+ * normalized generation inputs (names, URLs, channels, logo/splash bytes) and the template
+ * version; a hit hard-links the finished project and its APK/AAB artifacts into the new app
+ * directory instead of building again. Entries expire after a maximum age (the bundled website
+ * snapshot goes stale) and the least recently used ones are evicted past the size limit.
+ * Callers decide per file what is left out or rewritten on the way in, so nothing tied to one
+ * requester (their signing key, its passwords, signatures made with it) is handed to the next.
+ */
+
+const path = require('path');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+
+// Not needed to download or rebuild the project, and the bulk of its size
+const SKIP_DIRS = new Set(['node_modules', '.gradle', '.angular', 'build']);
+
+class BuildCache {
+  constructor({
+    dir,
+    maxBytes = (parseInt(process.env.BUILD_CACHE_MAX_MB, 10) || 5120) * 1024 * 1024,
+    maxAgeMs = (parseInt(process.env.BUILD_CACHE_MAX_AGE_HOURS, 10) || 24) * 60 * 60 * 1000
+  }) {
+    this.dir = dir;
+    this.indexPath = path.join(dir, 'index.json');
+    this.maxBytes = maxBytes;
+    this.maxAgeMs = maxAgeMs;
+    this.index = null;
+  }
+
+  async load() {
+    if (this.index) return this.index;
+    await fs.ensureDir(this.dir);
+    this.index = (await fs.pathExists(this.indexPath))
+      ? await fs.readJson(this.indexPath).catch(() => null)
+      : null;
+    if (!this.index) {
+      this.index = { entries: {}, metrics: { hits: 0, misses: 0, stores: 0, evictions: 0 } };
+    }
+    return this.index;
+  }
+
+  async save() {
+    await fs.writeJson(`${this.indexPath}.tmp`, this.index);
+    await fs.move(`${this.indexPath}.tmp`, this.indexPath, { overwrite: true });
+  }
+
+  /**
+   * Key for the inputs that decide what gets built
+   */
+  async computeKey({ templateVersion, appName, websiteUrl, packageName, buildType, pushServerUrl, notificationChannels, logo, splash }) {
+    const hash = crypto.createHash('sha256');
+    const normalized = {
+      templateVersion,
+      appName: appName.trim(),
+      websiteUrl: new URL(websiteUrl.trim()).href,
+      packageName: packageName.trim(),
+      buildType,
+      pushServerUrl: pushServerUrl || '',
+      notificationChannels: notificationChannels || null,
+      logo: logo ? await hashFile(logo.path) : null,
+      splash: splash ? await hashFile(splash.path) : null
+    };
+    hash.update(JSON.stringify(normalized));
+    return hash.digest('hex');
+  }
+
+  /**
+   * The cached entry for the key, or null; counts towards the hit rate
+   */
+  async lookup(key) {
+    await this.load();
+    const entry = this.index.entries[key];
+    const entryDir = path.join(this.dir, key);
+    if (entry && Date.now() - entry.createdAt < this.maxAgeMs && await fs.pathExists(entryDir)) {
+      entry.lastHitAt = Date.now();
+      entry.hits++;
+      this.index.metrics.hits++;
+      await this.save();
+      return entry;
+    }
+
+    if (entry) {
+      await this.remove(key);
+    }
+    this.index.metrics.misses++;
+    await this.save();
+    return null;
+  }
+
+  /**
+   * Hard-link a cached project, artifacts included, into a new app directory; files the caller
+   * is going to rewrite (copy(relativePath) true) are copied so the cache entry stays intact
+   */
+  async materialize(key, appDir, { copy = () => false } = {}) {
+    await linkTree(path.join(this.dir, key), appDir, { copy });
+  }
+
+  /**
+   * Cache a finished app directory under the key, then evict down to the size limit.
+   * skip(relativePath) leaves a file out, transform(relativePath) may return an
+   * async (source, destination) writer that stores a rewritten copy instead of a link.
+   */
+  async store(key, appDir, meta = {}, { skip = () => false, transform = () => null } = {}) {
+    await this.load();
+    const entryDir = path.join(this.dir, key);
+    const stagingDir = `${entryDir}.${process.pid}.tmp`;
+    await fs.remove(stagingDir);
+    const bytes = await linkTree(appDir, stagingDir, { skip, transform });
+    await fs.remove(entryDir);
+    await fs.move(stagingDir, entryDir);
+
+    this.index.entries[key] = { ...meta, createdAt: Date.now(), lastHitAt: Date.now(), hits: 0, bytes };
+    this.index.metrics.stores++;
+    await this.evict();
+    await this.save();
+  }
+
+  // Expired entries first, then least recently hit until the cache fits
+  async evict() {
+    const now = Date.now();
+    for (const [key, entry] of Object.entries(this.index.entries)) {
+      if (now - entry.createdAt >= this.maxAgeMs) {
+        await this.remove(key);
+        this.index.metrics.evictions++;
+      }
+    }
+
+    const entries = Object.entries(this.index.entries).sort((a, b) => a[1].lastHitAt - b[1].lastHitAt);
+    let totalBytes = entries.reduce((sum, [, entry]) => sum + entry.bytes, 0);
+    for (const [key, entry] of entries) {
+      if (totalBytes <= this.maxBytes) break;
+      await this.remove(key);
+      totalBytes -= entry.bytes;
+      this.index.metrics.evictions++;
+    }
+  }
+
+  async remove(key) {
+    delete this.index.entries[key];
+    await fs.remove(path.join(this.dir, key));
+  }
+
+  async stats() {
+    await this.load();
+    const { hits, misses, stores, evictions } = this.index.metrics;
+    const entries = Object.values(this.index.entries);
+    return {
+      entries: entries.length,
+      totalMb: Math.round(entries.reduce((sum, entry) => sum + entry.bytes, 0) / (1024 * 1024)),
+      maxMb: Math.round(this.maxBytes / (1024 * 1024)),
+      maxAgeHours: this.maxAgeMs / (60 * 60 * 1000),
+      hits,
+      misses,
+      stores,
+      evictions,
+      hitRate: hits + misses > 0 ? Number((hits / (hits + misses)).toFixed(3)) : null
+    };
+  }
+}
+
+async function hashFile(filePath) {
+  return new Promise((resolve, reject) => {
+    const hash = crypto.createHash('sha256');
+    fs.createReadStream(filePath)
+      .on('data', (chunk) => hash.update(chunk))
+      .on('error', reject)
+      .on('end', () => resolve(hash.digest('hex')));
+  });
+}
+
+// Hard links share the bytes with the source, copies are the fallback across filesystems.
+// Relative paths use forward slashes on every platform.
+async function linkTree(source, destination, { skip = () => false, transform = () => null, copy = () => false } = {}, relativeDir = '') {
+  let bytes = 0;
+  await fs.ensureDir(destination);
+  for (const entry of await fs.readdir(source, { withFileTypes: true })) {
+    const sourcePath = path.join(source, entry.name);
+    const destinationPath = path.join(destination, entry.name);
+    const relativePath = relativeDir ? `${relativeDir}/${entry.name}` : entry.name;
+    if (skip(relativePath)) continue;
+    if (entry.isDirectory()) {
+      if (!SKIP_DIRS.has(entry.name)) bytes += await linkTree(sourcePath, destinationPath, { skip, transform, copy }, relativePath);
+    } else if (entry.isSymbolicLink()) {
+      await fs.symlink(await fs.readlink(sourcePath), destinationPath);
+    } else if (entry.isFile()) {
+      const writer = transform(relativePath);
+      if (writer) {
+        await writer(sourcePath, destinationPath);
+        bytes += (await fs.stat(destinationPath)).size;
+        continue;
+      }
+      if (copy(relativePath)) {
+        await fs.copyFile(sourcePath, destinationPath);
+      } else {
+        try {
+          await fs.link(sourcePath, destinationPath);
+        } catch (error) {
+          if (!['EXDEV', 'EPERM', 'EMLINK'].includes(error.code)) throw error;
+          await fs.copyFile(sourcePath, destinationPath);
+        }
+      }
+      bytes += (await fs.stat(sourcePath)).size;
+    }
+  }
+  return bytes;
+}
+
+module.exports = {
+  BuildCache
+};
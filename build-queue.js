@@ -0,0 +1,242 @@
+/**
+ * Build job queue for EZ-GEN
+ *
+ * App generation (npm install, Angular build, Capacitor sync, Gradle) runs as a job instead of
+ * inside the HTTP request. A fixed number of build slots, sized from CPU cores and RAM, bounds how
+ * many builds (and Gradle JVMs) run at once; the rest wait in priority order and the queue refuses
+ * new jobs once the backlog limit is reached so callers can back off.
+ */
+
+const os = require('os');
+const { EventEmitter } = require('events');
+
+// Lower rank runs first
+const PRIORITY_CLASSES = {
+  debug: { rank: 0, defaultDurationMs: 4 * 60 * 1000 },
+  playstore: { rank: 1, defaultDurationMs: 8 * 60 * 1000 }
+};
+
+// A waiting Play Store build is treated like a debug build after this long, so it cannot starve
+const PROMOTE_AFTER_MS = 10 * 60 * 1000;
+// Finished jobs stay queryable this long
+const FINISHED_JOB_TTL_MS = 60 * 60 * 1000;
+// Memory one build needs: Gradle daemon, Kotlin daemon, Node for the web build
+const MEMORY_PER_SLOT_MB = 3072;
+const RESERVED_MEMORY_MB = 1024;
+
+class QueueFullError extends Error {
+  constructor(retryAfterSeconds) {
+    super('Build queue is full, please retry later');
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+}
+
+/**
+ * Slots from BUILD_SLOTS, otherwise what both half the cores and the RAM allow
+ */
+function defaultSlotCount() {
+  if (process.env.BUILD_SLOTS) {
+    return Math.max(1, parseInt(process.env.BUILD_SLOTS, 10) || 1);
+  }
+  const byCpu = Math.floor(os.cpus().length / 2);
+  const byMemory = Math.floor((os.totalmem() / (1024 * 1024) - RESERVED_MEMORY_MB) / MEMORY_PER_SLOT_MB);
+  return Math.max(1, Math.min(byCpu, byMemory));
+}
+
+class BuildQueue extends EventEmitter {
+  constructor({ slots = defaultSlotCount(), maxBacklog = parseInt(process.env.BUILD_QUEUE_LIMIT, 10) || 20 } = {}) {
+    super();
+    this.slots = slots;
+    this.maxBacklog = maxBacklog;
+    this.jobs = new Map();
+    this.waiting = [];
+    this.running = new Set();
+    // Moving average of build time per priority class, drives the ETAs
+    this.averageDurationMs = {};
+    for (const [name, priorityClass] of Object.entries(PRIORITY_CLASSES)) {
+      this.averageDurationMs[name] = priorityClass.defaultDurationMs;
+    }
+  }
+
+  /**
+   * Queue a job; run(job) returns a promise whose value becomes job.result. A job with `after`
+   * (a promise) does not take a slot before that promise settles.
+   * Throws QueueFullError when the backlog limit is reached.
+   */
+  enqueue({ id, priority = 'playstore', run, meta = {}, after = null }) {
+    if (!PRIORITY_CLASSES[priority]) {
+      throw new Error(`Unknown build priority: ${priority}`);
+    }
+    if (this.waiting.length >= this.maxBacklog) {
+      throw new QueueFullError(Math.ceil(this.nextSlotFreeInMs() / 1000));
+    }
+
+    const job = {
+      id,
+      priority,
+      run,
+      meta,
+      status: 'queued',
+      queuedAt: Date.now(),
+      startedAt: null,
+      finishedAt: null,
+      result: null,
+      error: null,
+      blocked: Boolean(after)
+    };
+    this.jobs.set(id, job);
+    this.waiting.push(job);
+    if (after) {
+      Promise.resolve(after).catch(() => {}).then(() => {
+        job.blocked = false;
+        this.schedule();
+      });
+    }
+    this.pruneFinished();
+    this.schedule();
+    return job;
+  }
+
+  getJob(id) {
+    return this.jobs.get(id) || null;
+  }
+
+  /**
+   * 1-based place among waiting jobs, 0 once the job runs, null when it is done
+   */
+  position(id) {
+    const job = this.jobs.get(id);
+    if (!job) return null;
+    if (job.status === 'running') return 0;
+    if (job.status !== 'queued') return null;
+    return this.ordered().indexOf(job) + 1;
+  }
+
+  /**
+   * Seconds until the job is expected to finish, from the average build time per class and
+   * what is running and queued ahead of it
+   */
+  eta(id) {
+    const job = this.jobs.get(id);
+    if (!job || (job.status !== 'queued' && job.status !== 'running')) return null;
+
+    const now = Date.now();
+    const slotFreeAt = [...this.running].map(runningJob => this.expectedFinish(runningJob, now));
+    while (slotFreeAt.length < this.slots) slotFreeAt.push(now);
+    if (job.status === 'running') {
+      return Math.ceil((this.expectedFinish(job, now) - now) / 1000);
+    }
+
+    for (const queued of this.ordered()) {
+      slotFreeAt.sort((a, b) => a - b);
+      const finishAt = slotFreeAt[0] + this.averageDurationMs[queued.priority];
+      if (queued === job) {
+        return Math.ceil((finishAt - now) / 1000);
+      }
+      slotFreeAt[0] = finishAt;
+    }
+    return null;
+  }
+
+  describe(id) {
+    const job = this.jobs.get(id);
+    if (!job) return null;
+    return {
+      jobId: job.id,
+      status: job.status,
+      priority: job.priority,
+      position: this.position(id),
+      etaSeconds: this.eta(id),
+      queuedAt: new Date(job.queuedAt).toISOString(),
+      startedAt: job.startedAt ? new Date(job.startedAt).toISOString() : null,
+      finishedAt: job.finishedAt ? new Date(job.finishedAt).toISOString() : null,
+      result: job.result,
+      error: job.error
+    };
+  }
+
+  stats() {
+    const averageDurationSeconds = {};
+    for (const [name, duration] of Object.entries(this.averageDurationMs)) {
+      averageDurationSeconds[name] = Math.round(duration / 1000);
+    }
+    return {
+      slots: this.slots,
+      running: this.running.size,
+      queued: this.waiting.length,
+      maxBacklog: this.maxBacklog,
+      averageDurationSeconds
+    };
+  }
+
+  // How long a rejected client should wait before retrying
+  nextSlotFreeInMs() {
+    const now = Date.now();
+    const finishes = [...this.running].map(job => this.expectedFinish(job, now));
+    return finishes.length > 0 ? Math.max(Math.min(...finishes) - now, 1000) : 1000;
+  }
+
+  expectedFinish(job, now) {
+    // Overrunning jobs are assumed to be nearly done rather than already finished
+    return Math.max(job.startedAt + this.averageDurationMs[job.priority], now + 5000);
+  }
+
+  ordered() {
+    const now = Date.now();
+    const rank = job => (now - job.queuedAt >= PROMOTE_AFTER_MS ? 0 : PRIORITY_CLASSES[job.priority].rank);
+    return [...this.waiting].sort((a, b) => rank(a) - rank(b) || a.queuedAt - b.queuedAt);
+  }
+
+  schedule() {
+    while (this.running.size < this.slots) {
+      const job = this.ordered().find(candidate => !candidate.blocked);
+      if (!job) break;
+      this.waiting.splice(this.waiting.indexOf(job), 1);
+      this.start(job);
+    }
+  }
+
+  start(job) {
+    job.status = 'running';
+    job.startedAt = Date.now();
+    this.running.add(job);
+    this.emit('started', job);
+
+    Promise.resolve()
+      .then(() => job.run(job))
+      .then((result) => {
+        job.status = 'completed';
+        job.result = result || null;
+        this.recordDuration(job);
+      })
+      .catch((error) => {
+        job.status = 'failed';
+        job.error = error.message;
+      })
+      .finally(() => {
+        job.finishedAt = Date.now();
+        this.running.delete(job);
+        this.emit('finished', job);
+        this.schedule();
+      });
+  }
+
+  recordDuration(job) {
+    const duration = Date.now() - job.startedAt;
+    this.averageDurationMs[job.priority] = Math.round(this.averageDurationMs[job.priority] * 0.7 + duration * 0.3);
+  }
+
+  pruneFinished() {
+    const cutoff = Date.now() - FINISHED_JOB_TTL_MS;
+    for (const [id, job] of this.jobs) {
+      if (job.finishedAt && job.finishedAt < cutoff) this.jobs.delete(id);
+    }
+  }
+}
+
+module.exports = {
+  BuildQueue,
+  QueueFullError,
+  PRIORITY_CLASSES,
+  defaultSlotCount
+};
@@ -0,0 +1,718 @@
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildLauncher;
+import org.gradle.tooling.CancellationTokenSource;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskSkippedResult;
+import org.gradle.tooling.events.task.TaskStartEvent;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import jdk.security.jarsigner.JarSigner;
+
+/**
+ * Long-lived Gradle build worker for the EZ-GEN server.
+ *
+ * Keeps Tooling API connections (and through them warm Gradle daemons) between builds so each
+ * generated app skips daemon discovery, JVM start-up and most of configuration. The Node server
+ * talks to it over a loopback socket with one JSON object per line:
+ *
+ *   -> {"type":"build","id":"7","projectDir":"/.../android","tasks":["assembleRelease"],"arguments":["--stacktrace"]}
+ *   <- {"id":"7","event":"task-start","task":":app:mergeReleaseResources"}
+ *   <- {"id":"7","event":"task-finish","task":":app:mergeReleaseResources","outcome":"success","durationMs":812}
+ *   <- {"id":"7","event":"output","stream":"stdout","line":"..."}
+ *   <- {"id":"7","event":"result","success":true,"durationMs":48211}
+ *
+ * Archives are signed here too, so re-signing needs neither a rebuild nor a new JVM. APKs go
+ * through apksig (loaded from the build-tools apksigner.jar), bundles through the JDK JarSigner:
+ *
+ *   -> {"type":"sign","id":"8","format":"apk","input":"...","output":"...","apksigJar":"...",
+ *       "keystore":"...","storePassword":"...","alias":"release-key","keyPassword":"..."}
+ *   <- {"id":"8","event":"result","success":true,"durationMs":640}
+ *
+ * Other requests: {"type":"cancel","id":"7"}, {"type":"status"} and {"type":"shutdown"}.
+ *
+ * Every request carries "token", the secret the server passes in EZGEN_WORKER_TOKEN. Connections
+ * are accepted until one sends a valid token; others are closed without a reply, so another local
+ * process can neither drive the worker nor read signing passwords off it.
+ *
+ * Reuse is bounded: at most maxConnections projects stay connected (least recently used are
+ * closed), at most maxParallel builds run at once, and builds wait while the machine is short on
+ * memory, closing idle connections to let their daemons go.
+ */
+public class GradleBuildWorker {
+    // An unauthenticated client gets this long to send its first request
+    private static final int AUTH_TIMEOUT_MS = 5000;
+
+    private final byte[] token;
+    private final int maxConnections;
+    private final int maxParallel;
+    private final long minFreeMemoryMb;
+    private final long idleTimeoutMs;
+
+    // projectDir -> connection, in least recently used order
+    private final LinkedHashMap<String, Connection> connections = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CancellationTokenSource> cancellations = new ConcurrentHashMap<>();
+    private final ExecutorService builds;
+    // Signing is short and CPU-bound, one at a time beside the builds
+    private final ExecutorService signing = Executors.newSingleThreadExecutor();
+    private URLClassLoader apksig;
+    private final Object memoryLock = new Object();
+    private int runningBuilds = 0;
+    private Writer out;
+
+    private static final class Connection {
+        final GradleConnector connector;
+        final ProjectConnection project;
+        int activeBuilds = 0;
+        long lastUsedAt = System.currentTimeMillis();
+
+        Connection(GradleConnector connector, ProjectConnection project) {
+            this.connector = connector;
+            this.project = project;
+        }
+    }
+
+    GradleBuildWorker(byte[] token, int maxConnections, int maxParallel, long minFreeMemoryMb, long idleTimeoutMs) {
+        this.token = token;
+        this.maxConnections = maxConnections;
+        this.maxParallel = maxParallel;
+        this.minFreeMemoryMb = minFreeMemoryMb;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.builds = Executors.newFixedThreadPool(maxParallel);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        String token = System.getenv("EZGEN_WORKER_TOKEN");
+        if (token == null || token.isEmpty()) {
+            System.err.println("EZGEN_WORKER_TOKEN is not set");
+            System.exit(2);
+        }
+        GradleBuildWorker worker = new GradleBuildWorker(
+            token.getBytes(StandardCharsets.UTF_8),
+            Integer.parseInt(options.getOrDefault("max-connections", "4")),
+            Integer.parseInt(options.getOrDefault("max-parallel", "2")),
+            Long.parseLong(options.getOrDefault("min-free-memory-mb", "2048")),
+            Long.parseLong(options.getOrDefault("idle-timeout-s", "600")) * 1000);
+        worker.serve();
+    }
+
+    private void serve() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // The Node server reads the port from stdout, only it is meant to connect
+            System.out.println("READY " + server.getLocalPort());
+            System.out.flush();
+
+            Thread reaper = new Thread(this::closeIdleConnectionsLoop, "idle-connection-reaper");
+            reaper.setDaemon(true);
+            reaper.start();
+
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    if (session(socket)) break;
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Serve one client. Returns false when it never sent a valid token, so the next one is accepted.
+     */
+    private boolean session(Socket socket) throws IOException {
+        socket.setSoTimeout(AUTH_TIMEOUT_MS);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        boolean authenticated = false;
+        String line;
+        try {
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                Map<String, Object> request;
+                try {
+                    request = Json.parseObject(line);
+                } catch (IllegalArgumentException e) {
+                    if (!authenticated) return false;
+                    send(null, "error", "message", "Invalid request: " + e.getMessage());
+                    continue;
+                }
+                if (!hasToken(request)) {
+                    if (!authenticated) return false;
+                    send(null, "error", "message", "Invalid token");
+                    continue;
+                }
+                if (!authenticated) {
+                    authenticated = true;
+                    socket.setSoTimeout(0);
+                    synchronized (this) {
+                        out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    }
+                }
+                try {
+                    if (!handle(request)) break;
+                } catch (RuntimeException e) {
+                    send(request.get("id") != null ? String.valueOf(request.get("id")) : null, "result",
+                        "success", false, "failure", rootMessage(e));
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+        return authenticated;
+    }
+
+    // Constant time, the token must not leak through response timing
+    private boolean hasToken(Map<String, Object> request) {
+        Object value = request.get("token");
+        return value instanceof String && MessageDigest.isEqual(token, ((String) value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean handle(Map<String, Object> request) {
+        String type = String.valueOf(request.get("type"));
+        String id = request.get("id") != null ? String.valueOf(request.get("id")) : null;
+        switch (type) {
+            case "build":
+                CancellationTokenSource cancellation = GradleConnector.newCancellationTokenSource();
+                cancellations.put(id, cancellation);
+                builds.submit(() -> runBuild(id, request, cancellation));
+                return true;
+            case "sign":
+                signing.submit(() -> runSign(id, request));
+                return true;
+            case "cancel":
+                CancellationTokenSource source = cancellations.get(id);
+                if (source != null) source.cancel();
+                return true;
+            case "status":
+                send(id, "status", "connections", connectionCount(), "runningBuilds", runningBuildCount(),
+                    "freeMemoryMb", freeMemoryMb());
+                return true;
+            case "shutdown":
+                return false;
+            default:
+                send(id, "error", "message", "Unknown request type: " + type);
+                return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runBuild(String id, Map<String, Object> request, CancellationTokenSource cancellation) {
+        long startedAt = System.currentTimeMillis();
+        String projectDir = new File(String.valueOf(request.get("projectDir"))).getAbsolutePath();
+        Connection connection = null;
+        boolean admitted = false;
+        LineStream stdout = new LineStream(id, "stdout");
+        LineStream stderr = new LineStream(id, "stderr");
+        try {
+            waitForMemory(id);
+            admitted = true;
+            connection = acquire(projectDir);
+
+            List<String> tasks = (List<String>) request.getOrDefault("tasks", new ArrayList<>());
+            List<String> arguments = (List<String>) request.getOrDefault("arguments", new ArrayList<>());
+            BuildLauncher launcher = connection.project.newBuild()
+                .forTasks(tasks.toArray(new String[0]))
+                .withArguments(arguments.toArray(new String[0]))
+                .setStandardOutput(stdout)
+                .setStandardError(stderr)
+                .withCancellationToken(cancellation.token());
+            Object env = request.get("env");
+            if (env instanceof Map) {
+                Map<String, String> environment = new LinkedHashMap<>();
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) env).entrySet()) {
+                    environment.put(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+                launcher.setEnvironmentVariables(environment);
+            }
+            launcher.addProgressListener((ProgressEvent event) -> onTaskEvent(id, event), EnumSet.of(OperationType.TASK));
+
+            launcher.run();
+            stdout.flush();
+            stderr.flush();
+            send(id, "result", "success", true, "durationMs", System.currentTimeMillis() - startedAt);
+        } catch (BuildCancelledException e) {
+            send(id, "result", "success", false, "cancelled", true, "durationMs", System.currentTimeMillis() - startedAt);
+        } catch (Throwable e) {
+            stdout.flush();
+            stderr.flush();
+            send(id, "result", "success", false, "durationMs", System.currentTimeMillis() - startedAt,
+                "failure", rootMessage(e));
+        } finally {
+            cancellations.remove(id);
+            if (admitted) release(connection);
+        }
+    }
+
+    private void runSign(String id, Map<String, Object> request) {
+        long startedAt = System.currentTimeMillis();
+        try {
+            char[] storePassword = String.valueOf(request.get("storePassword")).toCharArray();
+            char[] keyPassword = String.valueOf(request.getOrDefault("keyPassword", request.get("storePassword"))).toCharArray();
+            String alias = String.valueOf(request.get("alias"));
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (FileInputStream in = new FileInputStream(String.valueOf(request.get("keystore")))) {
+                keyStore.load(in, storePassword);
+            }
+            PrivateKey key = (PrivateKey) keyStore.getKey(alias, keyPassword);
+            Certificate[] chain = keyStore.getCertificateChain(alias);
+            if (key == null || chain == null) {
+                throw new IllegalArgumentException("No key entry '" + alias + "' in keystore");
+            }
+            List<X509Certificate> certificates = new ArrayList<>();
+            for (Certificate certificate : chain) {
+                certificates.add((X509Certificate) certificate);
+            }
+
+            File input = new File(String.valueOf(request.get("input")));
+            File output = new File(String.valueOf(request.get("output")));
+            if ("jar".equals(request.get("format"))) {
+                signJar(input, output, key, certificates, alias);
+            } else {
+                signApk(input, output, key, certificates, alias, String.valueOf(request.get("apksigJar")));
+            }
+            send(id, "result", "success", true, "durationMs", System.currentTimeMillis() - startedAt);
+        } catch (Throwable e) {
+            send(id, "result", "success", false, "durationMs", System.currentTimeMillis() - startedAt,
+                "failure", rootMessage(e));
+        }
+    }
+
+    private static void signJar(File input, File output, PrivateKey key, List<X509Certificate> certificates, String alias)
+            throws Exception {
+        JarSigner signer = new JarSigner.Builder(key, java.security.cert.CertificateFactory.getInstance("X.509")
+                .generateCertPath(certificates))
+            .digestAlgorithm("SHA-256")
+            .signatureAlgorithm("SHA256withRSA")
+            // Same META-INF/<NAME>.SF naming jarsigner derives from the alias
+            .signerName(alias.toUpperCase().replaceAll("[^A-Z0-9_-]", "_").substring(0, Math.min(alias.length(), 8)))
+            .build();
+        File staging = new File(output.getPath() + ".tmp");
+        try (ZipFile zip = new ZipFile(input); FileOutputStream out = new FileOutputStream(staging)) {
+            signer.sign(zip, out);
+        }
+        Files.move(staging.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // apksig through reflection, it is only on the classpath of the build-tools the app uses
+    private void signApk(File input, File output, PrivateKey key, List<X509Certificate> certificates, String alias,
+            String apksigJar) throws Exception {
+        ClassLoader loader = apksigLoader(apksigJar);
+        Class<?> signerConfigBuilder = loader.loadClass("com.android.apksig.ApkSigner$SignerConfig$Builder");
+        Constructor<?> configConstructor = signerConfigBuilder.getConstructor(String.class, PrivateKey.class, List.class);
+        Object signerConfig = signerConfigBuilder.getMethod("build")
+            .invoke(configConstructor.newInstance(alias, key, certificates));
+
+        Class<?> signerBuilder = loader.loadClass("com.android.apksig.ApkSigner$Builder");
+        Object builder = signerBuilder.getConstructor(List.class).newInstance(Arrays.asList(signerConfig));
+        signerBuilder.getMethod("setInputApk", File.class).invoke(builder, input);
+        signerBuilder.getMethod("setOutputApk", File.class).invoke(builder, output);
+        Object signer = signerBuilder.getMethod("build").invoke(builder);
+        signer.getClass().getMethod("sign").invoke(signer);
+    }
+
+    private synchronized ClassLoader apksigLoader(String apksigJar) throws IOException {
+        if (apksig == null) {
+            File jar = new File(apksigJar);
+            if (!jar.isFile()) throw new IOException("apksig not found at " + apksigJar);
+            apksig = new URLClassLoader(new URL[] { jar.toURI().toURL() }, GradleBuildWorker.class.getClassLoader());
+        }
+        return apksig;
+    }
+
+    private void onTaskEvent(String id, ProgressEvent event) {
+        if (event instanceof TaskStartEvent) {
+            send(id, "task-start", "task", ((TaskStartEvent) event).getDescriptor().getTaskPath());
+        } else if (event instanceof TaskFinishEvent) {
+            TaskFinishEvent finish = (TaskFinishEvent) event;
+            TaskOperationResult result = finish.getResult();
+            String outcome;
+            if (result instanceof TaskFailureResult) {
+                outcome = "failed";
+            } else if (result instanceof TaskSkippedResult) {
+                outcome = "skipped";
+            } else if (result instanceof TaskSuccessResult && ((TaskSuccessResult) result).isFromCache()) {
+                outcome = "from-cache";
+            } else if (result instanceof TaskSuccessResult && ((TaskSuccessResult) result).isUpToDate()) {
+                outcome = "up-to-date";
+            } else {
+                outcome = "success";
+            }
+            send(id, "task-finish", "task", finish.getDescriptor().getTaskPath(), "outcome", outcome,
+                "durationMs", result.getEndTime() - result.getStartTime());
+        }
+    }
+
+    private Connection acquire(String projectDir) {
+        synchronized (connections) {
+            Connection connection = connections.get(projectDir);
+            if (connection == null) {
+                GradleConnector connector = GradleConnector.newConnector().forProjectDirectory(new File(projectDir));
+                connection = new Connection(connector, connector.connect());
+                connections.put(projectDir, connection);
+                evictOverLimit();
+            }
+            connection.activeBuilds++;
+            connection.lastUsedAt = System.currentTimeMillis();
+            return connection;
+        }
+    }
+
+    private void release(Connection connection) {
+        synchronized (memoryLock) {
+            runningBuilds--;
+            memoryLock.notifyAll();
+        }
+        if (connection == null) return;
+        synchronized (connections) {
+            connection.activeBuilds--;
+            connection.lastUsedAt = System.currentTimeMillis();
+            evictOverLimit();
+        }
+    }
+
+    // Least recently used first, connections with a running build are never closed
+    private void evictOverLimit() {
+        Iterator<Map.Entry<String, Connection>> iterator = connections.entrySet().iterator();
+        while (connections.size() > maxConnections && iterator.hasNext()) {
+            Connection connection = iterator.next().getValue();
+            if (connection.activeBuilds == 0) {
+                iterator.remove();
+                connection.project.close();
+            }
+        }
+    }
+
+    /**
+     * Hold the build back while free memory is below the threshold. Idle connections are closed
+     * and their daemons stopped first; a build always runs when nothing else is running.
+     */
+    private void waitForMemory(String id) throws InterruptedException {
+        synchronized (memoryLock) {
+            boolean announced = false;
+            while (runningBuilds > 0 && freeMemoryMb() < minFreeMemoryMb) {
+                if (closeIdleConnections(0) > 0) continue;
+                if (!announced) {
+                    send(id, "waiting", "reason", "low-memory", "freeMemoryMb", freeMemoryMb());
+                    announced = true;
+                }
+                memoryLock.wait(5000);
+            }
+            runningBuilds++;
+        }
+    }
+
+    private int closeIdleConnections(long idleForMs) {
+        List<Connection> closed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (connections) {
+            Iterator<Map.Entry<String, Connection>> iterator = connections.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next().getValue();
+                if (connection.activeBuilds == 0 && now - connection.lastUsedAt >= idleForMs) {
+                    iterator.remove();
+                    closed.add(connection);
+                }
+            }
+        }
+        for (Connection connection : closed) {
+            connection.project.close();
+            // Stops the daemons this connector started, the next build starts a fresh one
+            connection.connector.disconnect();
+        }
+        return closed.size();
+    }
+
+    private void closeIdleConnectionsLoop() {
+        while (true) {
+            try {
+                Thread.sleep(Math.max(idleTimeoutMs / 4, 10_000));
+            } catch (InterruptedException e) {
+                return;
+            }
+            closeIdleConnections(idleTimeoutMs);
+        }
+    }
+
+    private void shutdown() {
+        for (CancellationTokenSource source : cancellations.values()) {
+            source.cancel();
+        }
+        builds.shutdown();
+        signing.shutdown();
+        try {
+            builds.awaitTermination(30, TimeUnit.SECONDS);
+            signing.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeIdleConnections(0);
+        System.exit(0);
+    }
+
+    private int connectionCount() {
+        synchronized (connections) {
+            return connections.size();
+        }
+    }
+
+    private int runningBuildCount() {
+        synchronized (memoryLock) {
+            return runningBuilds;
+        }
+    }
+
+    // MemAvailable counts reclaimable page cache, the MXBean's free memory does not
+    @SuppressWarnings("deprecation")
+    private static long freeMemoryMb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/meminfo"))) {
+                if (line.startsWith("MemAvailable:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // Not Linux
+        }
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize() / (1024 * 1024);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static String rootMessage(Throwable error) {
+        StringBuilder message = new StringBuilder();
+        for (Throwable cause = error; cause != null && message.length() < 4000; cause = cause.getCause()) {
+            if (message.length() > 0) message.append(" <- ");
+            message.append(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+            if (cause.getCause() == cause) break;
+        }
+        return message.toString();
+    }
+
+    private void send(String id, String event, Object... fields) {
+        StringBuilder json = new StringBuilder("{");
+        if (id != null) {
+            json.append("\"id\":").append(Json.quote(id)).append(',');
+        }
+        json.append("\"event\":").append(Json.quote(event));
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            json.append(',').append(Json.quote(String.valueOf(fields[i]))).append(':');
+            Object value = fields[i + 1];
+            json.append(value instanceof Number || value instanceof Boolean ? String.valueOf(value) : Json.quote(String.valueOf(value)));
+        }
+        json.append("}\n");
+        synchronized (this) {
+            if (out == null) return;
+            try {
+                out.write(json.toString());
+                out.flush();
+            } catch (IOException e) {
+                // Server went away, the read loop ends and shuts the worker down
+            }
+        }
+    }
+
+    /**
+     * Build output forwarded line by line as "output" events
+     */
+    private final class LineStream extends OutputStream {
+        private final String id;
+        private final String stream;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineStream(String id, String stream) {
+            this.id = id;
+            this.stream = stream;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                flush();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (line.size() == 0) return;
+            send(id, "output", "stream", stream, "line", new String(line.toByteArray(), StandardCharsets.UTF_8));
+            line.reset();
+        }
+    }
+
+    /**
+     * Just enough JSON for the request format: objects, arrays, strings, numbers and literals
+     */
+    static final class Json {
+        private final String text;
+        private int position;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> parseObject(String text) {
+            Json parser = new Json(text);
+            Object value = parser.value();
+            if (!(value instanceof Map)) throw new IllegalArgumentException("expected an object");
+            return (Map<String, Object>) value;
+        }
+
+        static String quote(String value) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (char c : value.toCharArray()) {
+                switch (c) {
+                    case '"': quoted.append("\\\""); break;
+                    case '\\': quoted.append("\\\\"); break;
+                    case '\n': quoted.append("\\n"); break;
+                    case '\r': quoted.append("\\r"); break;
+                    case '\t': quoted.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            quoted.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            quoted.append(c);
+                        }
+                }
+            }
+            return quoted.append('"').toString();
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (position >= text.length()) throw new IllegalArgumentException("unexpected end");
+            char c = text.charAt(position);
+            if (c == '{') return object();
+            if (c == '[') return array();
+            if (c == '"') return string();
+            if (text.startsWith("true", position)) { position += 4; return Boolean.TRUE; }
+            if (text.startsWith("false", position)) { position += 5; return Boolean.FALSE; }
+            if (text.startsWith("null", position)) { position += 4; return null; }
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) position++;
+            if (start == position) throw new IllegalArgumentException("unexpected '" + c + "' at " + position);
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (peek() == '}') { position++; return object; }
+            while (true) {
+                skipWhitespace();
+                String key = string();
+                skipWhitespace();
+                expect(':');
+                object.put(key, value());
+                skipWhitespace();
+                if (peek() == ',') { position++; continue; }
+                expect('}');
+                return object;
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (peek() == ']') { position++; return array; }
+            while (true) {
+                array.add(value());
+                skipWhitespace();
+                if (peek() == ',') { position++; continue; }
+                expect(']');
+                return array;
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') return value.toString();
+                if (c != '\\') { value.append(c); continue; }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+
+        private char peek() {
+            return position < text.length() ? text.charAt(position) : '\0';
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw new IllegalArgumentException("expected '" + c + "' at " + position);
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+        }
+    }
+}
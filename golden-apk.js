@@ -0,0 +1,452 @@
+/**
+ * Golden APK fast path for EZ-GEN
+ *
+ * Generated apps only differ in package name, app name, website URL, icons, notification
+ * channels and the website snapshot. Instead of running npm, Angular, Capacitor and Gradle for
+ * every request, the template is built once with sentinel values ("golden" build), decoded with
+ * apktool and kept on disk. Per-app builds copy the decoded tree, swap the sentinels in the
+ * manifest, smali (relocating MainActivity and the other template classes), resources and web
+ * assets, then rebuild with apktool and zipalign and sign with apksig in the build worker. The
+ * AAB is produced from the same output through aapt2's proto format and bundletool.
+ *
+ * Tools: apktool (APKTOOL_JAR or apktool on PATH), Android build-tools (zipalign, apksigner,
+ * aapt2) and optionally bundletool (BUNDLETOOL_JAR) for the AAB.
+ */
+
+const path = require('path');
+const fs = require('fs-extra');
+const crypto = require('crypto');
+const { spawn } = require('child_process');
+const archiver = require('archiver');
+const { signApk, signBundle } = require('./signing');
+const { generateAppAssets } = require('./image-assets');
+
+// Bump when the substitution logic changes so older golden builds are rebuilt
+const GOLDEN_FORMAT_VERSION = 1;
+const GOLDEN_DIR = path.join(__dirname, 'golden-template');
+const TEMPLATE_DIR = path.join(__dirname, 'templates', 'ionic-webview-template');
+
+// Values the golden build is generated with, unique enough to replace blindly
+const GOLDEN_APP = {
+  appName: 'EzGenGoldenApp',
+  slug: 'ezgengoldenapp',
+  packageName: 'com.ezgen.golden',
+  websiteUrl: 'https://golden-site.ezgen.invalid',
+  host: 'golden-site.ezgen.invalid'
+};
+
+const TEXT_EXTENSIONS = new Set(['.xml', '.smali', '.json', '.js', '.mjs', '.html', '.css', '.txt', '.yml', '.webmanifest', '.properties']);
+const FINGERPRINT_SKIP_DIRS = new Set(['node_modules', 'www', 'build', '.gradle', '.angular', '.idea', 'dist']);
+
+function runTool(command, args, options = {}) {
+  return new Promise((resolve, reject) => {
+    const proc = spawn(command, args, { stdio: 'pipe', ...options });
+    let output = '';
+    proc.stdout.on('data', (data) => { output += data.toString(); });
+    proc.stderr.on('data', (data) => { output += data.toString(); });
+    proc.on('error', reject);
+    proc.on('close', (code) => {
+      if (code !== 0) {
+        return reject(new Error(`${path.basename(command)} ${args[0]} failed with code ${code}: ${output.slice(-1000)}`));
+      }
+      resolve(output);
+    });
+  });
+}
+
+function findOnPath(name) {
+  const extensions = process.platform === 'win32' ? ['.bat', '.cmd', '.exe', ''] : [''];
+  for (const dir of (process.env.PATH || '').split(path.delimiter)) {
+    for (const ext of extensions) {
+      const candidate = path.join(dir, name + ext);
+      if (dir && fs.existsSync(candidate)) return candidate;
+    }
+  }
+  return null;
+}
+
+// Newest build-tools version that has the tool
+function findBuildTool(name) {
+  const sdk = process.env.ANDROID_HOME || process.env.ANDROID_SDK_ROOT;
+  if (!sdk) return null;
+  const buildToolsDir = path.join(sdk, 'build-tools');
+  if (!fs.existsSync(buildToolsDir)) return null;
+
+  const versions = fs.readdirSync(buildToolsDir).sort((a, b) => b.localeCompare(a, undefined, { numeric: true }));
+  const extensions = process.platform === 'win32' ? ['.bat', '.exe'] : [''];
+  for (const version of versions) {
+    for (const ext of extensions) {
+      const candidate = path.join(buildToolsDir, version, name + ext);
+      if (fs.existsSync(candidate)) return candidate;
+    }
+  }
+  return null;
+}
+
+function resolveTools() {
+  const apktoolJar = process.env.APKTOOL_JAR;
+  const apktool = apktoolJar && fs.existsSync(apktoolJar)
+    ? { command: 'java', prefix: ['-jar', apktoolJar] }
+    : (findOnPath('apktool') ? { command: findOnPath('apktool'), prefix: [] } : null);
+  const bundletoolJar = process.env.BUNDLETOOL_JAR;
+
+  return {
+    apktool,
+    zipalign: findBuildTool('zipalign'),
+    apksigner: findBuildTool('apksigner'),
+    aapt2: findBuildTool('aapt2'),
+    bundletool: bundletoolJar && fs.existsSync(bundletoolJar) ? bundletoolJar : null
+  };
+}
+
+function apktool(tools, args, options) {
+  return runTool(tools.apktool.command, [...tools.apktool.prefix, ...args], options);
+}
+
+// Hash of everything that ends up in the golden build: the template and the generator itself.
+// Both only change with a deploy, so it is computed once per process.
+let fingerprintPromise = null;
+function templateFingerprint() {
+  if (!fingerprintPromise) {
+    fingerprintPromise = computeTemplateFingerprint().catch((error) => {
+      fingerprintPromise = null;
+      throw error;
+    });
+  }
+  return fingerprintPromise;
+}
+
+async function computeTemplateFingerprint() {
+  const hash = crypto.createHash('sha256');
+  hash.update(`format:${GOLDEN_FORMAT_VERSION}\n`);
+
+  const walk = async (dir) => {
+    const entries = (await fs.readdir(dir, { withFileTypes: true })).sort((a, b) => a.name.localeCompare(b.name));
+    for (const entry of entries) {
+      const fullPath = path.join(dir, entry.name);
+      if (entry.isDirectory()) {
+        if (!FINGERPRINT_SKIP_DIRS.has(entry.name)) await walk(fullPath);
+      } else if (entry.isFile()) {
+        hash.update(path.relative(TEMPLATE_DIR, fullPath).replace(/\\/g, '/') + '\n');
+        hash.update(await fs.readFile(fullPath));
+      }
+    }
+  };
+  await walk(TEMPLATE_DIR);
+  hash.update(await fs.readFile(path.join(__dirname, 'server.js')));
+  hash.update(await fs.readFile(__filename));
+  return hash.digest('hex');
+}
+
+async function readGoldenManifest() {
+  const manifestPath = path.join(GOLDEN_DIR, 'golden.json');
+  return (await fs.pathExists(manifestPath)) ? fs.readJson(manifestPath) : null;
+}
+
+/**
+ * Whether per-app builds can use the fast path right now, with the reason when they cannot
+ */
+async function getStatus() {
+  const tools = resolveTools();
+  const missing = ['apktool', 'zipalign', 'apksigner'].filter(tool => !tools[tool]);
+  if (missing.length > 0) {
+    return { available: false, reason: `missing tools: ${missing.join(', ')}` };
+  }
+
+  const manifest = await readGoldenManifest();
+  if (!manifest) {
+    return { available: false, reason: 'no golden build yet (POST /api/golden-apk/rebuild)' };
+  }
+  const fingerprint = await templateFingerprint();
+  if (manifest.fingerprint !== fingerprint) {
+    return { available: false, reason: 'golden build is older than the template, rebuild it', stale: true };
+  }
+  return { available: true, manifest, aab: Boolean(tools.bundletool && tools.aapt2) };
+}
+
+/**
+ * Decode the APKs of a sentinel-configured Gradle build into the golden store
+ */
+async function prepareGolden({ releaseApk, debugApk }, log = console.log) {
+  const tools = resolveTools();
+  if (!tools.apktool) throw new Error('apktool not found (set APKTOOL_JAR or add apktool to PATH)');
+
+  const stagingDir = `${GOLDEN_DIR}.staging`;
+  await fs.emptyDir(stagingDir);
+
+  const variants = { release: releaseApk, debug: debugApk };
+  const manifest = {
+    formatVersion: GOLDEN_FORMAT_VERSION,
+    fingerprint: await templateFingerprint(),
+    createdAt: new Date().toISOString(),
+    sentinels: GOLDEN_APP,
+    variants: {}
+  };
+
+  for (const [variant, apkPath] of Object.entries(variants)) {
+    if (!apkPath || !(await fs.pathExists(apkPath))) continue;
+    const decodedDir = path.join(stagingDir, variant);
+    log(`🧬 Decoding golden ${variant} APK...`);
+    await apktool(tools, ['d', '-f', apkPath, '-o', decodedDir]);
+
+    // The binary baseline profile is tied to the original dex checksums, it would be rejected
+    await fs.remove(path.join(decodedDir, 'assets', 'dexopt'));
+
+    // Remember where sentinels live so per-app builds only touch those files
+    const substitutionFiles = [];
+    const sentinelValues = [GOLDEN_APP.packageName, packageToPath(GOLDEN_APP.packageName), GOLDEN_APP.appName, GOLDEN_APP.slug, GOLDEN_APP.host];
+    await walkFiles(decodedDir, async (filePath) => {
+      if (!TEXT_EXTENSIONS.has(path.extname(filePath))) return;
+      const content = await fs.readFile(filePath, 'utf8');
+      if (sentinelValues.some(value => content.includes(value))) {
+        substitutionFiles.push(path.relative(decodedDir, filePath));
+      }
+    });
+
+    const smaliPackageDirs = [];
+    for (const entry of await fs.readdir(decodedDir)) {
+      const packageDir = path.join(entry, packageToPath(GOLDEN_APP.packageName));
+      if (entry.startsWith('smali') && await fs.pathExists(path.join(decodedDir, packageDir))) {
+        smaliPackageDirs.push(packageDir);
+      }
+    }
+
+    manifest.variants[variant] = { substitutionFiles, smaliPackageDirs };
+    log(`✅ Golden ${variant}: ${substitutionFiles.length} files with app-specific values, ${smaliPackageDirs.length} smali package dirs`);
+  }
+
+  if (!manifest.variants.release) {
+    throw new Error('golden build needs at least a release APK');
+  }
+  await fs.writeJson(path.join(stagingDir, 'golden.json'), manifest, { spaces: 2 });
+  await fs.remove(GOLDEN_DIR);
+  await fs.move(stagingDir, GOLDEN_DIR);
+  return manifest;
+}
+
+/**
+ * Build the per-app APKs (and the AAB when bundletool is available) from the golden build.
+ * `status` is the caller's getStatus() result, looked up again when not given.
+ * Throws when the fast path cannot be used so the caller can fall back to Gradle.
+ */
+async function repackage({ appDir, appName, packageName, websiteUrl, keystoreInfo, versionCode, versionName, outputDir, status = null }, log = console.log) {
+  status = status || await getStatus();
+  if (!status.available) throw new Error(`golden APK unavailable: ${status.reason}`);
+
+  const tools = resolveTools();
+  const startedAt = Date.now();
+  const workDir = path.join(appDir, 'android', 'build', 'golden');
+  await fs.emptyDir(workDir);
+  await fs.ensureDir(outputDir);
+
+  const slug = appName.toLowerCase().replace(/[^a-z0-9]/g, '-');
+  const replacements = appReplacements({ appName, slug, packageName, websiteUrl });
+  const keystorePath = path.join(appDir, 'android', 'app', keystoreInfo.keystoreFile);
+  const results = { apk: null, aab: null, debug: null };
+
+  // Only renders when a logo or splash was uploaded, the golden build already has the default icons
+  await generateAppAssets(appDir, log);
+
+  for (const [variant, variantInfo] of Object.entries(status.manifest.variants)) {
+    const decodedDir = path.join(workDir, variant);
+    await fs.copy(path.join(GOLDEN_DIR, variant), decodedDir);
+
+    // Relocate the template classes (MainActivity, MyFirebaseMessagingService, ...) to the app package
+    for (const packageDir of variantInfo.smaliPackageDirs) {
+      const smaliRoot = packageDir.split(/[\\/]/)[0];
+      const relocatedDir = path.join(workDir, `${variant}-relocating`);
+      await fs.move(path.join(decodedDir, packageDir), relocatedDir, { overwrite: true });
+      await fs.move(relocatedDir, path.join(decodedDir, smaliRoot, packageToPath(packageName)), { overwrite: true });
+    }
+
+    for (const relativePath of variantInfo.substitutionFiles) {
+      // Recorded before relocation, smali files have moved with their package
+      const filePath = path.join(decodedDir, relativePath.split(path.join(...GOLDEN_APP.packageName.split('.'))).join(path.join(...packageName.split('.'))));
+      if (!(await fs.pathExists(filePath))) continue;
+      const content = await fs.readFile(filePath, 'utf8');
+      await fs.writeFile(filePath, substituteSentinels(content, replacements, { xml: filePath.endsWith('.xml') }));
+    }
+
+    await applyAppOverlays(appDir, decodedDir, variant, { versionCode, versionName });
+
+    const unsignedApk = path.join(workDir, `${variant}-unsigned.apk`);
+    const alignedApk = path.join(workDir, `${variant}-aligned.apk`);
+    const finalName = `${slug}-${variant}.apk`;
+    log(`📦 Rebuilding ${variant} APK from golden template...`);
+    await apktool(tools, ['b', decodedDir, '-o', unsignedApk]);
+    await runTool(tools.zipalign, ['-p', '-f', '4', unsignedApk, alignedApk]);
+    await signApk({
+      input: alignedApk,
+      output: path.join(outputDir, finalName),
+      keystorePath,
+      keystoreInfo,
+      apksigner: tools.apksigner
+    });
+    results[variant === 'release' ? 'apk' : 'debug'] = finalName;
+
+    if (variant === 'release' && tools.bundletool && tools.aapt2) {
+      try {
+        const finalAabName = `${slug}-release.aab`;
+        await buildBundle(tools, unsignedApk, path.join(workDir, 'bundle'), path.join(outputDir, finalAabName), keystorePath, keystoreInfo);
+        results.aab = finalAabName;
+      } catch (error) {
+        log(`⚠️ AAB from golden build failed: ${error.message}`);
+      }
+    }
+  }
+
+  await fs.remove(workDir);
+  log(`⚡ Golden APK repackaging finished in ${((Date.now() - startedAt) / 1000).toFixed(1)}s`);
+  return results;
+}
+
+// Sentinel -> app value pairs; the URL goes before its host and the package path before the dotted name
+function appReplacements({ appName, slug, packageName, websiteUrl }) {
+  return [
+    [GOLDEN_APP.websiteUrl, websiteUrl],
+    [GOLDEN_APP.host, new URL(websiteUrl).hostname],
+    [packageToPath(GOLDEN_APP.packageName), packageToPath(packageName)],
+    [GOLDEN_APP.packageName, packageName],
+    [GOLDEN_APP.appName, appName],
+    [GOLDEN_APP.slug, slug]
+  ];
+}
+
+// Values written into decoded XML (manifest, resources) are escaped, smali and web assets take them as is
+function substituteSentinels(content, replacements, { xml = false } = {}) {
+  for (const [from, to] of replacements) {
+    content = content.split(from).join(xml ? escapeXml(to) : to);
+  }
+  return content;
+}
+
+// Per-app files that are not covered by sentinel substitution
+async function applyAppOverlays(appDir, decodedDir, variant, { versionCode, versionName }) {
+  const mainDir = path.join(appDir, 'android', 'app', 'src', 'main');
+
+  const channelsPath = path.join(mainDir, 'res', 'raw', 'notification_channels.json');
+  if (await fs.pathExists(channelsPath)) {
+    await fs.copy(channelsPath, path.join(decodedDir, 'res', 'raw', 'notification_channels.json'));
+  }
+
+  // The web layer reads its per-app values from app-config.js, written properly escaped for the app
+  const appConfigPath = path.join(appDir, 'src', 'assets', 'app-config.js');
+  if (await fs.pathExists(appConfigPath)) {
+    await fs.copy(appConfigPath, path.join(decodedDir, 'assets', 'public', 'assets', 'app-config.js'));
+  }
+
+  const snapshotDir = path.join(mainDir, 'assets', 'snapshot');
+  await fs.remove(path.join(decodedDir, 'assets', 'snapshot'));
+  if (await fs.pathExists(snapshotDir)) {
+    await fs.copy(snapshotDir, path.join(decodedDir, 'assets', 'snapshot'));
+  }
+
+  // Values from res/values/config.xml that are set per app
+  const configPath = path.join(mainDir, 'res', 'values', 'config.xml');
+  const stringsPath = path.join(decodedDir, 'res', 'values', 'strings.xml');
+  if (await fs.pathExists(configPath) && await fs.pathExists(stringsPath)) {
+    const config = await fs.readFile(configPath, 'utf8');
+    const pushServerUrl = (config.match(/<string name="push_server_url"[^>]*>([^<]*)<\/string>/) || [])[1] || '';
+    let strings = await fs.readFile(stringsPath, 'utf8');
+    strings = strings.replace(/(<string name="push_server_url"[^>]*>)[^<]*(<\/string>)|<string name="push_server_url"[^>]*\/>/,
+      () => `<string name="push_server_url">${pushServerUrl}</string>`);
+    await fs.writeFile(stringsPath, strings);
+  }
+
+  // Launcher icons and splash rendered by image-assets.js
+  const generatedRes = path.join(mainDir, 'res');
+  await walkFiles(generatedRes, async (filePath) => {
+    const relativePath = path.relative(generatedRes, filePath);
+    const folder = relativePath.split(path.sep)[0];
+    const name = path.basename(filePath, path.extname(filePath));
+    if (!/^(mipmap|drawable)/.test(folder) || !/^(ic_launcher|splash)/.test(name)) return;
+
+    const targetDir = path.join(decodedDir, 'res', folder);
+    await fs.ensureDir(targetDir);
+    // Same resource name with another extension would be a duplicate resource
+    for (const existing of await fs.readdir(targetDir)) {
+      if (path.basename(existing, path.extname(existing)) === name && existing !== path.basename(filePath)) {
+        await fs.remove(path.join(targetDir, existing));
+      }
+    }
+    await fs.copy(filePath, path.join(targetDir, path.basename(filePath)));
+  });
+
+  // apktool.yml carries the version the manifest is rebuilt with
+  const apktoolYmlPath = path.join(decodedDir, 'apktool.yml');
+  if (versionCode && await fs.pathExists(apktoolYmlPath)) {
+    let apktoolYml = await fs.readFile(apktoolYmlPath, 'utf8');
+    apktoolYml = apktoolYml
+      .replace(/versionCode:\s*'?\d+'?/, `versionCode: ${variant === 'release' ? versionCode : 1}`)
+      .replace(/versionName:\s*.*/, `versionName: ${versionName}`);
+    await fs.writeFile(apktoolYmlPath, apktoolYml);
+  }
+}
+
+// APK -> proto-format resources -> base module zip -> AAB, as Gradle's bundleRelease lays it out
+async function buildBundle(tools, unsignedApk, bundleDir, outputAab, keystorePath, keystoreInfo) {
+  await fs.emptyDir(bundleDir);
+  const protoApk = path.join(bundleDir, 'proto.apk');
+  const extractedDir = path.join(bundleDir, 'extracted');
+  const baseZip = path.join(bundleDir, 'base.zip');
+  await runTool(tools.aapt2, ['convert', '--output-format', 'proto', '-o', protoApk, unsignedApk]);
+  await fs.ensureDir(extractedDir);
+  await runTool('jar', ['xf', protoApk], { cwd: extractedDir });
+
+  await new Promise((resolve, reject) => {
+    const output = fs.createWriteStream(baseZip);
+    const archive = archiver('zip', { zlib: { level: 6 } });
+    output.on('close', resolve);
+    archive.on('error', reject);
+    archive.pipe(output);
+    for (const entry of fs.readdirSync(extractedDir)) {
+      const entryPath = path.join(extractedDir, entry);
+      if (entry === 'AndroidManifest.xml') {
+        archive.file(entryPath, { name: 'manifest/AndroidManifest.xml' });
+      } else if (/^classes\d*\.dex$/.test(entry)) {
+        archive.file(entryPath, { name: `dex/${entry}` });
+      } else if (entry === 'resources.pb') {
+        archive.file(entryPath, { name: entry });
+      } else if (['res', 'assets', 'lib'].includes(entry)) {
+        archive.directory(entryPath, entry);
+      } else if (entry !== 'META-INF') {
+        fs.statSync(entryPath).isDirectory() ? archive.directory(entryPath, `root/${entry}`) : archive.file(entryPath, { name: `root/${entry}` });
+      }
+    }
+    archive.finalize();
+  });
+
+  await runTool('java', ['-jar', tools.bundletool, 'build-bundle', `--modules=${baseZip}`, `--output=${outputAab}`, '--overwrite']);
+  await signBundle({ bundle: outputAab, keystorePath, keystoreInfo });
+}
+
+async function walkFiles(dir, visit) {
+  if (!(await fs.pathExists(dir))) return;
+  for (const entry of await fs.readdir(dir, { withFileTypes: true })) {
+    const fullPath = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      await walkFiles(fullPath, visit);
+    } else if (entry.isFile()) {
+      await visit(fullPath);
+    }
+  }
+}
+
+function packageToPath(packageName) {
+  return packageName.replace(/\./g, '/');
+}
+
+function escapeXml(value) {
+  return value.replace(/&(?!amp;|lt;|gt;|quot;|apos;)/g, '&amp;').replace(/</g, '&lt;');
+}
+
+module.exports = {
+  GOLDEN_APP,
+  appReplacements,
+  findBuildTool,
+  getStatus,
+  prepareGolden,
+  repackage,
+  substituteSentinels,
+  templateFingerprint
+};
@@ -0,0 +1,336 @@
+/**
+ * Client for the warm Gradle build worker (build-worker/GradleBuildWorker.java)
+ *
+ * Every Gradle step used to spawn ./gradlew, paying for the wrapper JVM, daemon discovery and
+ * configuration each time. The worker is one long-lived JVM holding Gradle Tooling API
+ * connections, so builds reuse warm daemons across steps and across apps. runGradle() returns a
+ * ChildProcess-like object (stdout/stderr 'data', 'close' with an exit code, 'error') plus
+ * 'progress' events for task start/finish, and falls back to spawning gradlew whenever the
+ * worker cannot be started. signArchive() signs an APK or bundle in the same JVM.
+ *
+ * The worker is compiled on first use against the Tooling API jar that ships in the Gradle
+ * distribution the wrapper already downloaded (or GRADLE_TOOLING_API_CLASSPATH).
+ * GRADLE_BUILD_WORKER=false turns it off. It runs as many builds at once as the build queue has
+ * slots, so a job the queue reports as running is not left waiting inside the worker. Each start
+ * gets a random token through the environment that every request must carry, other local
+ * processes cannot use the worker's loopback port.
+ */
+
+const path = require('path');
+const os = require('os');
+const net = require('net');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+const { spawn } = require('child_process');
+const { EventEmitter } = require('events');
+const { defaultSlotCount } = require('./build-queue');
+
+const WORKER_SOURCE = path.join(__dirname, 'build-worker', 'GradleBuildWorker.java');
+const WORKER_CLASS = 'GradleBuildWorker';
+const STARTUP_TIMEOUT_MS = 30000;
+// A failed start is not retried on every build, the distribution may show up after a gradlew run
+const RETRY_AFTER_MS = 5 * 60 * 1000;
+
+let worker = null;
+let workerStarting = null;
+let lastFailure = null;
+
+function javaTool(name) {
+  const executable = process.platform === 'win32' ? `${name}.exe` : name;
+  return process.env.JAVA_HOME ? path.join(process.env.JAVA_HOME, 'bin', executable) : name;
+}
+
+function compareVersions(a, b) {
+  const left = a.split(/[.-]/).map(part => parseInt(part, 10) || 0);
+  const right = b.split(/[.-]/).map(part => parseInt(part, 10) || 0);
+  for (let i = 0; i < Math.max(left.length, right.length); i++) {
+    if ((left[i] || 0) !== (right[i] || 0)) return (left[i] || 0) - (right[i] || 0);
+  }
+  return 0;
+}
+
+// Tooling API and slf4j jars from the newest Gradle distribution in the wrapper cache
+async function findToolingApiClasspath() {
+  if (process.env.GRADLE_TOOLING_API_CLASSPATH) {
+    return process.env.GRADLE_TOOLING_API_CLASSPATH.split(path.delimiter).filter(Boolean);
+  }
+
+  const gradleUserHome = process.env.GRADLE_USER_HOME || path.join(os.homedir(), '.gradle');
+  const distsDir = path.join(gradleUserHome, 'wrapper', 'dists');
+  if (!(await fs.pathExists(distsDir))) return null;
+
+  let best = null;
+  for (const distribution of await fs.readdir(distsDir)) {
+    const distributionDir = path.join(distsDir, distribution);
+    if (!(await fs.stat(distributionDir)).isDirectory()) continue;
+    for (const hash of await fs.readdir(distributionDir)) {
+      const hashDir = path.join(distributionDir, hash);
+      if (!(await fs.stat(hashDir)).isDirectory()) continue;
+      for (const home of await fs.readdir(hashDir)) {
+        const libDir = path.join(hashDir, home, 'lib');
+        if (!(await fs.pathExists(libDir))) continue;
+        const jars = await fs.readdir(libDir);
+        const toolingJar = jars.find(jar => /^gradle-tooling-api-[\d.]+.*\.jar$/.test(jar));
+        const slf4jJar = jars.find(jar => /^slf4j-api-.*\.jar$/.test(jar));
+        if (!toolingJar || !slf4jJar) continue;
+        const version = toolingJar.replace(/^gradle-tooling-api-|\.jar$/g, '');
+        if (!best || compareVersions(version, best.version) > 0) {
+          best = { version, classpath: [path.join(libDir, toolingJar), path.join(libDir, slf4jJar)] };
+        }
+      }
+    }
+  }
+  return best ? best.classpath : null;
+}
+
+function runTool(command, args) {
+  return new Promise((resolve, reject) => {
+    const proc = spawn(command, args, { stdio: 'pipe' });
+    let output = '';
+    proc.stdout.on('data', (data) => { output += data.toString(); });
+    proc.stderr.on('data', (data) => { output += data.toString(); });
+    proc.on('error', reject);
+    proc.on('close', (code) => code === 0 ? resolve(output) : reject(new Error(`${command} failed: ${output.slice(-500)}`)));
+  });
+}
+
+// Compiled classes are cached per source and Tooling API version
+async function compileWorker(classpath) {
+  const source = await fs.readFile(WORKER_SOURCE);
+  const key = crypto.createHash('sha256').update(source).update(classpath.join(path.delimiter)).digest('hex').slice(0, 16);
+  const classesDir = path.join(os.tmpdir(), 'ezgen-build-worker', key);
+  if (await fs.pathExists(path.join(classesDir, `${WORKER_CLASS}.class`))) {
+    return classesDir;
+  }
+
+  console.log('🔧 Compiling Gradle build worker...');
+  const stagingDir = `${classesDir}.${process.pid}`;
+  await fs.emptyDir(stagingDir);
+  await runTool(javaTool('javac'), ['-nowarn', '-encoding', 'UTF-8', '-cp', classpath.join(path.delimiter), '-d', stagingDir, WORKER_SOURCE]);
+  await fs.move(stagingDir, classesDir, { overwrite: true });
+  return classesDir;
+}
+
+async function startWorker() {
+  const classpath = await findToolingApiClasspath();
+  if (!classpath) {
+    throw new Error('Gradle Tooling API not found (no Gradle distribution downloaded yet)');
+  }
+  const classesDir = await compileWorker(classpath);
+
+  const args = [
+    '-Xmx256m',
+    '-cp', [classesDir, ...classpath].join(path.delimiter),
+    WORKER_CLASS,
+    '--max-connections', process.env.GRADLE_WORKER_MAX_CONNECTIONS || '4',
+    '--max-parallel', process.env.GRADLE_WORKER_MAX_PARALLEL || String(defaultSlotCount()),
+    '--min-free-memory-mb', process.env.GRADLE_WORKER_MIN_FREE_MEMORY_MB || '2048',
+    '--idle-timeout-s', process.env.GRADLE_WORKER_IDLE_TIMEOUT_S || '600'
+  ];
+  const token = crypto.randomBytes(32).toString('hex');
+  const proc = spawn(javaTool('java'), args, {
+    stdio: ['ignore', 'pipe', 'pipe'],
+    env: { ...process.env, EZGEN_WORKER_TOKEN: token }
+  });
+
+  const port = await new Promise((resolve, reject) => {
+    let output = '';
+    const timer = setTimeout(() => {
+      proc.kill();
+      reject(new Error('Gradle build worker did not start in time'));
+    }, STARTUP_TIMEOUT_MS);
+    proc.stdout.on('data', (data) => {
+      output += data.toString();
+      const match = output.match(/READY (\d+)/);
+      if (match) {
+        clearTimeout(timer);
+        resolve(parseInt(match[1], 10));
+      }
+    });
+    proc.stderr.on('data', (data) => { output += data.toString(); });
+    proc.on('error', (error) => {
+      clearTimeout(timer);
+      reject(error);
+    });
+    proc.on('exit', (code) => {
+      clearTimeout(timer);
+      reject(new Error(`Gradle build worker exited with code ${code}: ${output.slice(-500)}`));
+    });
+  });
+
+  const socket = await new Promise((resolve, reject) => {
+    const connection = net.createConnection({ host: '127.0.0.1', port }, () => resolve(connection));
+    connection.on('error', reject);
+  });
+
+  const instance = { proc, socket, token, builds: new Map(), nextId: 1 };
+  let buffered = '';
+  socket.setEncoding('utf8');
+  socket.on('data', (chunk) => {
+    buffered += chunk;
+    let newline;
+    while ((newline = buffered.indexOf('\n')) >= 0) {
+      const line = buffered.slice(0, newline);
+      buffered = buffered.slice(newline + 1);
+      if (line.trim()) dispatch(instance, line);
+    }
+  });
+
+  const onGone = () => {
+    if (worker === instance) worker = null;
+    // Builds in flight are lost with the worker
+    for (const handle of instance.builds.values()) {
+      handle.stderr.emit('data', 'Gradle build worker stopped unexpectedly\n');
+      handle.emit('close', 1);
+    }
+    instance.builds.clear();
+  };
+  socket.on('close', onGone);
+  socket.on('error', () => {});
+  proc.on('exit', onGone);
+  proc.stderr.on('data', (data) => console.log('🐘 Build worker:', data.toString().trim()));
+
+  console.log(`🐘 Gradle build worker ready on port ${port} (Tooling API ${path.basename(classpath[0])})`);
+  return instance;
+}
+
+function ensureWorker() {
+  if (worker) return Promise.resolve(worker);
+  if (lastFailure && Date.now() - lastFailure.at < RETRY_AFTER_MS) {
+    return Promise.reject(lastFailure.error);
+  }
+  if (!workerStarting) {
+    workerStarting = startWorker()
+      .then((instance) => {
+        worker = instance;
+        lastFailure = null;
+        return instance;
+      })
+      .catch((error) => {
+        lastFailure = { at: Date.now(), error };
+        throw error;
+      })
+      .finally(() => { workerStarting = null; });
+  }
+  return workerStarting;
+}
+
+function send(instance, request) {
+  instance.socket.write(`${JSON.stringify({ ...request, token: instance.token })}\n`);
+}
+
+function dispatch(instance, line) {
+  let message;
+  try {
+    message = JSON.parse(line);
+  } catch (error) {
+    return;
+  }
+  const handle = instance.builds.get(message.id);
+  if (!handle) return;
+
+  switch (message.event) {
+    case 'output':
+      handle[message.stream === 'stderr' ? 'stderr' : 'stdout'].emit('data', `${message.line}\n`);
+      break;
+    case 'task-start':
+    case 'task-finish':
+    case 'waiting':
+      handle.emit('progress', message);
+      break;
+    case 'result':
+      instance.builds.delete(message.id);
+      if (message.failure) {
+        handle.stderr.emit('data', `FAILURE: ${message.failure}\n`);
+      }
+      handle.emit('progress', message);
+      handle.emit('close', message.success ? 0 : 1);
+      break;
+  }
+}
+
+function spawnGradlew(handle, projectDir, args, env) {
+  const gradlewCmd = process.platform === 'win32' ? 'gradlew.bat' : './gradlew';
+  const proc = spawn(gradlewCmd, args, {
+    cwd: projectDir,
+    shell: true,
+    stdio: 'pipe',
+    env: env || process.env
+  });
+  proc.stdout.on('data', (data) => handle.stdout.emit('data', data));
+  proc.stderr.on('data', (data) => handle.stderr.emit('data', data));
+  proc.on('close', (code) => handle.emit('close', code));
+  proc.on('error', (error) => handle.emit('error', error));
+  handle.kill = () => proc.kill();
+}
+
+/**
+ * Run Gradle in projectDir with gradlew-style arguments, e.g. ['assembleRelease', '--stacktrace']
+ */
+function runGradle(projectDir, args, { env } = {}) {
+  const handle = new EventEmitter();
+  handle.stdout = new EventEmitter();
+  handle.stderr = new EventEmitter();
+  handle.kill = () => {};
+
+  if (process.env.GRADLE_BUILD_WORKER === 'false') {
+    spawnGradlew(handle, projectDir, args, env);
+    return handle;
+  }
+
+  ensureWorker()
+    .then((instance) => {
+      const id = String(instance.nextId++);
+      instance.builds.set(id, handle);
+      handle.kill = () => send(instance, { type: 'cancel', id });
+      send(instance, {
+        type: 'build',
+        id,
+        projectDir: path.resolve(projectDir),
+        tasks: args.filter(arg => !arg.startsWith('-')),
+        arguments: args.filter(arg => arg.startsWith('-')),
+        env: env || undefined
+      });
+    })
+    .catch((error) => {
+      console.log(`⚠️  Gradle build worker unavailable, using gradlew: ${error.message}`);
+      spawnGradlew(handle, projectDir, args, env);
+    });
+
+  return handle;
+}
+
+/**
+ * Sign an archive in the worker, see the "sign" request in GradleBuildWorker.java.
+ * Rejects when the worker is off or unavailable so callers can fall back to the CLI tools.
+ */
+async function signArchive(request) {
+  if (process.env.GRADLE_BUILD_WORKER === 'false') {
+    throw new Error('Gradle build worker disabled');
+  }
+  const instance = await ensureWorker();
+  const id = String(instance.nextId++);
+  const handle = new EventEmitter();
+  handle.stdout = new EventEmitter();
+  handle.stderr = new EventEmitter();
+  let failure = '';
+  handle.stderr.on('data', (data) => { failure += data.toString(); });
+
+  const closed = new Promise((resolve, reject) => {
+    handle.on('close', (code) => code === 0 ? resolve() : reject(new Error(failure.trim() || 'Signing failed')));
+  });
+  instance.builds.set(id, handle);
+  send(instance, {
+    type: 'sign',
+    id,
+    ...request,
+    input: path.resolve(request.input),
+    output: path.resolve(request.output)
+  });
+  return closed;
+}
+
+module.exports = {
+  runGradle,
+  signArchive
+};
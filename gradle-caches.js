@@ -0,0 +1,160 @@
+/**
+ * Shared Gradle caches for EZ-GEN
+ *
+ * Every generated app compiles the same capacitor-android and Cordova plugin modules and resolves
+ * the same AndroidX/Firebase dependencies. Two caches are shared between them:
+ *
+ * - a local build cache (gradle-cache/build-cache), wired in through the template's
+ *   settings.gradle via EZGEN_GRADLE_BUILD_CACHE, so cacheable tasks of identical modules are
+ *   restored instead of executed;
+ * - a read-only dependency cache (gradle-cache/ro-dep-cache, GRADLE_RO_DEP_CACHE), seeded by
+ *   warming: the template is built once with a private Gradle user home whose modules-2 cache
+ *   is then published. While the seed matches the template's dependency declarations, builds
+ *   run with --offline.
+ */
+
+const path = require('path');
+const os = require('os');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+const { spawn } = require('child_process');
+
+const CACHE_DIR = path.join(__dirname, 'gradle-cache');
+const BUILD_CACHE_DIR = path.join(CACHE_DIR, 'build-cache');
+const RO_DEP_CACHE_DIR = path.join(CACHE_DIR, 'ro-dep-cache');
+const SEED_HOME_DIR = path.join(CACHE_DIR, 'seed-home');
+const SEED_MANIFEST = path.join(CACHE_DIR, 'seed.json');
+const TEMPLATE_DIR = path.join(__dirname, 'templates', 'ionic-webview-template');
+
+// Everything that decides which dependencies a build resolves
+const DEPENDENCY_INPUTS = [
+  'package-lock.json',
+  'android/build.gradle',
+  'android/settings.gradle',
+  'android/variables.gradle',
+  'android/app/build.gradle',
+  'android/gradle/wrapper/gradle-wrapper.properties'
+];
+
+// Tasks run while warming, the same outputs a Play Store build produces
+const WARM_TASKS = ['assembleRelease', 'bundleRelease', 'assembleDebug'];
+
+async function dependencyFingerprint() {
+  const hash = crypto.createHash('sha256');
+  for (const input of DEPENDENCY_INPUTS) {
+    const inputPath = path.join(TEMPLATE_DIR, input);
+    hash.update(`${input}\n`);
+    if (await fs.pathExists(inputPath)) {
+      hash.update(await fs.readFile(inputPath));
+    }
+  }
+  return hash.digest('hex').slice(0, 16);
+}
+
+async function status() {
+  const seed = (await fs.pathExists(SEED_MANIFEST)) ? await fs.readJson(SEED_MANIFEST).catch(() => null) : null;
+  const fingerprint = await dependencyFingerprint();
+  const seeded = Boolean(seed) && await fs.pathExists(path.join(RO_DEP_CACHE_DIR, 'modules-2'));
+  return {
+    buildCacheDir: BUILD_CACHE_DIR,
+    readOnlyDependencyCacheDir: RO_DEP_CACHE_DIR,
+    seeded,
+    current: seeded && seed.fingerprint === fingerprint,
+    offline: seeded && seed.fingerprint === fingerprint && process.env.GRADLE_OFFLINE !== 'false',
+    warmedAt: seed ? seed.warmedAt : null
+  };
+}
+
+/**
+ * Environment and arguments for a per-app Gradle build
+ */
+async function buildOptions() {
+  if (process.env.SHARED_GRADLE_CACHE === 'false') {
+    return { env: {}, flags: [] };
+  }
+  await fs.ensureDir(BUILD_CACHE_DIR);
+  const cacheStatus = await status();
+  const env = { EZGEN_GRADLE_BUILD_CACHE: BUILD_CACHE_DIR };
+  if (cacheStatus.seeded) {
+    env.GRADLE_RO_DEP_CACHE = RO_DEP_CACHE_DIR;
+  }
+  return {
+    env,
+    flags: ['--build-cache', ...(cacheStatus.offline ? ['--offline'] : [])]
+  };
+}
+
+function runGradlew(androidDir, args, env, log) {
+  return new Promise((resolve, reject) => {
+    const gradlewCmd = process.platform === 'win32' ? 'gradlew.bat' : './gradlew';
+    const proc = spawn(gradlewCmd, args, { cwd: androidDir, shell: true, stdio: 'pipe', env });
+    let output = '';
+    const collect = (data) => {
+      output += data.toString();
+      if (output.length > 20000) output = output.slice(-10000);
+    };
+    proc.stdout.on('data', collect);
+    proc.stderr.on('data', collect);
+    proc.on('error', reject);
+    proc.on('close', (code) => {
+      if (code === 0) return resolve();
+      log(`❌ Gradle failed while warming caches:\n${output.slice(-2000)}`, 'error');
+      reject(new Error(`Gradle exited with code ${code} while warming caches`));
+    });
+  });
+}
+
+// Gradle's own lock and bookkeeping files must not be shared read-only
+async function removeCacheLocks(dir) {
+  for (const entry of await fs.readdir(dir, { withFileTypes: true })) {
+    const entryPath = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      await removeCacheLocks(entryPath);
+    } else if (entry.name.endsWith('.lock') || entry.name === 'gc.properties') {
+      await fs.remove(entryPath);
+    }
+  }
+}
+
+/**
+ * Build a prepared (synced) Android project with a private Gradle user home, filling the shared
+ * build cache, then publish the resolved dependencies as the read-only cache
+ */
+async function warm(androidDir, log = () => {}) {
+  const fingerprint = await dependencyFingerprint();
+  await fs.ensureDir(BUILD_CACHE_DIR);
+  await fs.ensureDir(SEED_HOME_DIR);
+
+  // Reuse the Gradle distributions the wrapper already downloaded
+  const defaultWrapperDir = path.join(process.env.GRADLE_USER_HOME || path.join(os.homedir(), '.gradle'), 'wrapper');
+  const seedWrapperDir = path.join(SEED_HOME_DIR, 'wrapper');
+  if (await fs.pathExists(defaultWrapperDir) && !(await fs.pathExists(seedWrapperDir))) {
+    await fs.symlink(defaultWrapperDir, seedWrapperDir, process.platform === 'win32' ? 'junction' : 'dir');
+  }
+
+  log('🐘 Resolving dependencies and filling the shared build cache...', 'info');
+  await runGradlew(androidDir, [...WARM_TASKS, '--build-cache', '--no-daemon'], {
+    ...process.env,
+    GRADLE_USER_HOME: SEED_HOME_DIR,
+    EZGEN_GRADLE_BUILD_CACHE: BUILD_CACHE_DIR
+  }, log);
+
+  log('📦 Publishing read-only dependency cache...', 'info');
+  const stagingDir = `${RO_DEP_CACHE_DIR}.${process.pid}.tmp`;
+  await fs.remove(stagingDir);
+  await fs.copy(path.join(SEED_HOME_DIR, 'caches', 'modules-2'), path.join(stagingDir, 'modules-2'));
+  await removeCacheLocks(stagingDir);
+  await fs.remove(RO_DEP_CACHE_DIR);
+  await fs.move(stagingDir, RO_DEP_CACHE_DIR);
+
+  const seed = { fingerprint, warmedAt: new Date().toISOString() };
+  await fs.writeJson(SEED_MANIFEST, seed, { spaces: 2 });
+  log(`✅ Gradle caches warmed (dependencies ${fingerprint})`, 'success');
+  return seed;
+}
+
+module.exports = {
+  buildOptions,
+  status,
+  warm
+};
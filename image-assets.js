@@ -0,0 +1,179 @@
+/**
+ * Launcher icon and splash screen pipeline for EZ-GEN
+ *
+ * Uploaded logos and splash screens used to go through `npx capacitor-assets generate` for every
+ * app, which starts a Node toolchain and re-encodes every density and adaptive-icon variant each
+ * time. Now each source image is decoded once to raw pixels and all Android variants are resized
+ * from it in parallel with sharp. The variants are cached under asset-cache/ by the content hash
+ * of the source, so an identical logo (the same brand generated again, or a rebuild) only copies
+ * files. Errors are thrown to the caller instead of being logged and skipped.
+ */
+
+const path = require('path');
+const nodeFs = require('fs');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+
+// Bump when the variants below change so cached outputs are regenerated
+const PIPELINE_VERSION = 1;
+const CACHE_DIR = path.join(__dirname, 'asset-cache');
+const RES_DIR = path.join('android', 'app', 'src', 'main', 'res');
+
+// Launcher icon size in px per density (48dp); adaptive icon layers are 108dp
+const ICON_DENSITIES = { mdpi: 48, hdpi: 72, xhdpi: 96, xxhdpi: 144, xxxhdpi: 192 };
+// Logo inside the 66dp safe zone of the 108dp adaptive foreground, so no launcher mask clips it
+const FOREGROUND_SAFE_ZONE = 66 / 108;
+
+// Portrait splash size per density, landscape is the same rotated
+const SPLASH_DENSITIES = { mdpi: [320, 480], hdpi: [480, 800], xhdpi: [720, 1280], xxhdpi: [960, 1600], xxxhdpi: [1280, 1920] };
+
+function iconVariants() {
+  const variants = [];
+  for (const [density, size] of Object.entries(ICON_DENSITIES)) {
+    const layerSize = Math.round(size * 108 / 48);
+    variants.push({ file: `mipmap-${density}/ic_launcher.png`, width: size, height: size, shape: 'square' });
+    variants.push({ file: `mipmap-${density}/ic_launcher_round.png`, width: size, height: size, shape: 'circle' });
+    variants.push({ file: `mipmap-${density}/ic_launcher_foreground.png`, width: layerSize, height: layerSize, shape: 'foreground' });
+  }
+  return variants;
+}
+
+function splashVariants() {
+  const variants = [{ file: 'drawable/splash.png', width: 480, height: 320, shape: 'cover' }];
+  for (const [density, [width, height]] of Object.entries(SPLASH_DENSITIES)) {
+    variants.push({ file: `drawable-port-${density}/splash.png`, width, height, shape: 'cover' });
+    variants.push({ file: `drawable-land-${density}/splash.png`, width: height, height: width, shape: 'cover' });
+  }
+  return variants;
+}
+
+const ASSETS = [
+  { kind: 'icon', source: 'resources/icon.png', variants: iconVariants },
+  { kind: 'splash', source: 'resources/splash.png', variants: splashVariants }
+];
+
+// Loaded on first render, so a server without the native module still starts and only
+// uploads that need rendering fail
+let sharpModule = null;
+function sharp(...args) {
+  if (!sharpModule) sharpModule = require('sharp');
+  return sharpModule(...args);
+}
+
+// Cache fills in progress per key, so concurrent jobs with the same image wait for one render
+const rendering = new Map();
+
+function circleMask(size) {
+  const radius = size / 2;
+  return Buffer.from(`<svg width="${size}" height="${size}"><circle cx="${radius}" cy="${radius}" r="${radius}" fill="#fff"/></svg>`);
+}
+
+function renderVariant(pixels, info, variant) {
+  const image = sharp(pixels, { raw: info });
+  const transparent = { r: 0, g: 0, b: 0, alpha: 0 };
+
+  switch (variant.shape) {
+    case 'cover':
+      return image.resize(variant.width, variant.height, { fit: 'cover' }).png().toBuffer();
+    case 'circle':
+      return image.resize(variant.width, variant.height, { fit: 'cover' })
+        .composite([{ input: circleMask(variant.width), blend: 'dest-in' }])
+        .png()
+        .toBuffer();
+    case 'foreground': {
+      const logoSize = Math.round(variant.width * FOREGROUND_SAFE_ZONE);
+      const padding = Math.floor((variant.width - logoSize) / 2);
+      return image.resize(logoSize, logoSize, { fit: 'contain', background: transparent })
+        .extend({ top: padding, left: padding, bottom: variant.width - logoSize - padding, right: variant.width - logoSize - padding, background: transparent })
+        .png()
+        .toBuffer();
+    }
+    default:
+      // Legacy square icon, the whole logo on a transparent canvas
+      return image.resize(variant.width, variant.height, { fit: 'contain', background: transparent }).png().toBuffer();
+  }
+}
+
+// Decode once, then every variant from the same pixels
+async function renderToCache(sourcePath, asset, cacheDir) {
+  const { data, info } = await sharp(sourcePath).ensureAlpha().raw().toBuffer({ resolveWithObject: true });
+  const raw = { width: info.width, height: info.height, channels: info.channels };
+
+  const stagingDir = `${cacheDir}.${process.pid}.tmp`;
+  await fs.remove(stagingDir);
+  try {
+    const variants = asset.variants();
+    await Promise.all(variants.map(async (variant) => {
+      const output = await renderVariant(data, raw, variant);
+      await fs.outputFile(path.join(stagingDir, variant.file), output);
+    }));
+    await fs.writeJson(path.join(stagingDir, 'variants.json'), {
+      source: { width: info.width, height: info.height },
+      files: variants.map(variant => variant.file)
+    });
+    await fs.remove(cacheDir);
+    await fs.move(stagingDir, cacheDir);
+  } catch (error) {
+    await fs.remove(stagingDir).catch(() => {});
+    throw error;
+  }
+}
+
+async function cachedVariants(sourcePath, asset) {
+  const hash = crypto.createHash('sha256')
+    .update(`${asset.kind}:${PIPELINE_VERSION}\n`)
+    .update(await fs.readFile(sourcePath))
+    .digest('hex')
+    .slice(0, 24);
+  const cacheDir = path.join(CACHE_DIR, `${asset.kind}-${hash}`);
+  const indexPath = path.join(cacheDir, 'variants.json');
+  if (await fs.pathExists(indexPath)) {
+    return { cacheDir, hash, cached: true, ...(await fs.readJson(indexPath)) };
+  }
+
+  if (!rendering.has(cacheDir)) {
+    rendering.set(cacheDir, renderToCache(sourcePath, asset, cacheDir).finally(() => rendering.delete(cacheDir)));
+  }
+  await rendering.get(cacheDir);
+  return { cacheDir, hash, cached: false, ...(await fs.readJson(indexPath)) };
+}
+
+/**
+ * Write launcher icons and splash screens for the uploaded resources/icon.png and
+ * resources/splash.png into the app's Android resources. Images that were not uploaded keep the
+ * template's defaults. Returns one entry per processed image.
+ */
+async function generateAppAssets(appDir, log = () => {}) {
+  const results = [];
+  for (const asset of ASSETS) {
+    const sourcePath = path.join(appDir, asset.source);
+    if (!(await fs.pathExists(sourcePath))) continue;
+
+    const startedAt = Date.now();
+    let variants;
+    try {
+      variants = await cachedVariants(sourcePath, asset);
+    } catch (error) {
+      throw new Error(`Could not process ${asset.source}: ${error.message}`);
+    }
+
+    // Copies, not links: the app's res directory is written in place later (golden overlays, user edits)
+    const resDir = path.join(appDir, RES_DIR);
+    await Promise.all(variants.files.map(async (file) => {
+      const target = path.join(resDir, file);
+      await fs.ensureDir(path.dirname(target));
+      await fs.copyFile(path.join(variants.cacheDir, file), target, nodeFs.constants.COPYFILE_FICLONE);
+    }));
+
+    const elapsedMs = Date.now() - startedAt;
+    log(variants.cached
+      ? `♻️ ${variants.files.length} ${asset.kind} variants reused from cache (${variants.hash.slice(0, 12)}, ${elapsedMs}ms)`
+      : `🎨 ${variants.files.length} ${asset.kind} variants rendered from ${variants.source.width}x${variants.source.height} source (${elapsedMs}ms)`);
+    results.push({ kind: asset.kind, hash: variants.hash, cached: variants.cached, files: variants.files.length, elapsedMs });
+  }
+  return results;
+}
+
+module.exports = {
+  generateAppAssets
+};
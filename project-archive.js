@@ -0,0 +1,201 @@
+/**
+ * Project downloads for EZ-GEN
+ *
+ * GET /api/download/:appId used to zip the whole app directory at zlib level 9 into a temp file
+ * on every request, send it and delete it again. The archive is now built once per build state of
+ * the app (a fingerprint of the file list, sizes and mtimes) into archive-cache/<appId>/ and sent
+ * from there, with ETag and Range support from res.download so interrupted downloads resume.
+ *
+ * The first download of a build is streamed to the client while it is being written to the cache.
+ * Build intermediates, IDE state and the shared node_modules link are left out, and entries that
+ * are already compressed (APK, AAB, images, fonts, jars) are stored instead of deflated again.
+ *
+ * Each new archive evicts those of removed apps and expired ones, then the least recently
+ * downloaded until the cache is under its size limit; an evicted archive is rebuilt on demand.
+ */
+
+const path = require('path');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+const archiver = require('archiver');
+
+const CACHE_DIR = path.join(__dirname, 'archive-cache');
+// Regenerated by npm install, ng build and Gradle; node_modules is a link to the shared bundle
+const SKIP_DIRS = new Set(['node_modules', '.angular', '.gradle', '.idea', '.cxx', 'build']);
+const STORED_EXTENSIONS = new Set([
+  '.apk', '.aab', '.jar', '.zip', '.gz', '.keystore', '.jks', '.p12',
+  '.png', '.jpg', '.jpeg', '.webp', '.gif', '.ico', '.woff', '.woff2', '.mp3', '.mp4'
+]);
+// Source text compresses well enough without level 9's extra CPU
+const ZLIB_LEVEL = 6;
+const MAX_BYTES = (parseInt(process.env.ARCHIVE_CACHE_MAX_MB, 10) || 2048) * 1024 * 1024;
+const MAX_AGE_MS = (parseInt(process.env.ARCHIVE_CACHE_MAX_AGE_HOURS, 10) || 24) * 60 * 60 * 1000;
+
+// Archives being written per cache path, later downloads wait for them
+const building = new Map();
+
+async function listFiles(appDir) {
+  const files = [];
+  const walk = async (relativeDir) => {
+    for (const entry of await fs.readdir(path.join(appDir, relativeDir), { withFileTypes: true })) {
+      const name = relativeDir ? `${relativeDir}/${entry.name}` : entry.name;
+      if (entry.isDirectory()) {
+        if (!SKIP_DIRS.has(entry.name)) await walk(name);
+      } else if (entry.isFile() && !entry.name.endsWith('.tmp')) {
+        const fullPath = path.join(appDir, name);
+        files.push({ name, fullPath, stats: await fs.stat(fullPath) });
+      }
+    }
+  };
+  await walk('');
+  return files.sort((a, b) => (a.name < b.name ? -1 : a.name > b.name ? 1 : 0));
+}
+
+async function locate(appId, appDir) {
+  const files = await listFiles(appDir);
+  const hash = crypto.createHash('sha1');
+  for (const file of files) {
+    hash.update(`${file.name}\0${file.stats.size}\0${file.stats.mtimeMs}\n`);
+  }
+  const archiveDir = path.join(CACHE_DIR, path.basename(appId));
+  return {
+    files,
+    appsDir: path.dirname(appDir),
+    archiveDir,
+    archivePath: path.join(archiveDir, `${hash.digest('hex').slice(0, 16)}.zip`)
+  };
+}
+
+/**
+ * Drop archives of apps no longer in appsDir and expired ones, then the least recently used
+ * (by mtime, refreshed on every download) until the cache fits. keepPath is never removed.
+ */
+async function evict(appsDir, keepPath) {
+  const now = Date.now();
+  const archives = [];
+  for (const appId of await fs.readdir(CACHE_DIR).catch(() => [])) {
+    const archiveDir = path.join(CACHE_DIR, appId);
+    const appRemoved = !(await fs.pathExists(path.join(appsDir, appId)));
+    for (const name of await fs.readdir(archiveDir).catch(() => [])) {
+      const archivePath = path.join(archiveDir, name);
+      if (!name.endsWith('.zip') || archivePath === keepPath) continue;
+      const stats = await fs.stat(archivePath).catch(() => null);
+      if (!stats) continue;
+      if (appRemoved || now - stats.mtimeMs >= MAX_AGE_MS) {
+        await fs.remove(archivePath).catch(() => {});
+      } else {
+        archives.push({ archivePath, bytes: stats.size, usedAt: stats.mtimeMs });
+      }
+    }
+    // Only succeeds once nothing, not even an archive being written, is left
+    await fs.rmdir(archiveDir).catch(() => {});
+  }
+
+  const keptBytes = keepPath ? await fs.stat(keepPath).then(stats => stats.size, () => 0) : 0;
+  let totalBytes = archives.reduce((sum, archive) => sum + archive.bytes, keptBytes);
+  for (const archive of archives.sort((a, b) => a.usedAt - b.usedAt)) {
+    if (totalBytes <= MAX_BYTES) break;
+    await fs.remove(archive.archivePath).catch(() => {});
+    totalBytes -= archive.bytes;
+  }
+}
+
+// Marks a cached archive as recently used for eviction
+function touch(archivePath) {
+  const now = new Date();
+  fs.utimes(archivePath, now, now).catch(() => {});
+}
+
+// Synchronous up to the first write, so a caller can pipe the archive before any data flows
+function startBuild({ files, appsDir, archiveDir, archivePath }) {
+  const tmpPath = `${archivePath}.${process.pid}.tmp`;
+  fs.ensureDirSync(archiveDir);
+  const output = fs.createWriteStream(tmpPath);
+  const archive = archiver('zip', { zlib: { level: ZLIB_LEVEL } });
+
+  const done = new Promise((resolve, reject) => {
+    output.on('close', resolve);
+    output.on('error', reject);
+    archive.on('error', reject);
+    archive.on('warning', error => console.warn('⚠️ Project archive:', error.message));
+  })
+    .then(async () => {
+      await fs.move(tmpPath, archivePath, { overwrite: true });
+      // Archives of earlier builds of the same app
+      for (const name of await fs.readdir(archiveDir)) {
+        if (name !== path.basename(archivePath) && name.endsWith('.zip')) {
+          await fs.remove(path.join(archiveDir, name)).catch(() => {});
+        }
+      }
+      await evict(appsDir, archivePath).catch(error => console.warn('⚠️ Archive cache eviction:', error.message));
+      return archivePath;
+    })
+    .catch(async (error) => {
+      archive.abort();
+      await fs.remove(tmpPath).catch(() => {});
+      throw error;
+    })
+    .finally(() => building.delete(archivePath));
+
+  archive.pipe(output);
+  for (const file of files) {
+    archive.file(file.fullPath, {
+      name: file.name,
+      stats: file.stats,
+      store: STORED_EXTENSIONS.has(path.extname(file.name).toLowerCase())
+    });
+  }
+  archive.finalize().catch(() => {});
+
+  const build = { archive, done };
+  building.set(archivePath, build);
+  return build;
+}
+
+/**
+ * Build the archive for the app's current state ahead of the first download
+ */
+async function prepare(appId, appDir) {
+  const location = await locate(appId, appDir);
+  if (await fs.pathExists(location.archivePath)) {
+    touch(location.archivePath);
+    return location.archivePath;
+  }
+  const build = building.get(location.archivePath) || startBuild(location);
+  return build.done;
+}
+
+function download(res, filePath, downloadName) {
+  return new Promise((resolve, reject) => {
+    res.download(filePath, downloadName, { acceptRanges: true }, error => (error ? reject(error) : resolve()));
+  });
+}
+
+/**
+ * Answer a project download: the cached archive with Range support, or stream it while building
+ */
+async function send(appId, appDir, res, downloadName) {
+  const location = await locate(appId, appDir);
+  if (await fs.pathExists(location.archivePath)) {
+    touch(location.archivePath);
+    return download(res, location.archivePath, downloadName);
+  }
+  const inProgress = building.get(location.archivePath);
+  if (inProgress) {
+    return download(res, await inProgress.done, downloadName);
+  }
+
+  const build = startBuild(location);
+  res.attachment(downloadName);
+  // Length is only known once written, Range requests are answered from the cached file
+  res.set('Accept-Ranges', 'none');
+  build.archive.pipe(res);
+  // A client that goes away must not stall the cache file
+  res.on('close', () => build.archive.unpipe(res));
+  await build.done;
+}
+
+module.exports = {
+  prepare,
+  send
+};
@@ -0,0 +1,103 @@
+/**
+ * Fetching user-supplied URLs for EZ-GEN
+ *
+ * The website snapshot fetches whatever URL a caller submits and bundles the responses into an
+ * APK they can download, so it must only ever reach public hosts. Every hop is checked: IP
+ * literals before the request, host names when the socket resolves them (so a name cannot
+ * resolve to a public address for a check and a private one for the connection), and redirects
+ * are followed by hand so each Location goes through the same checks.
+ */
+
+const dns = require('dns');
+const net = require('net');
+const http = require('http');
+const https = require('https');
+const fetch = require('node-fetch');
+
+const MAX_REDIRECTS = 5;
+const REDIRECT_STATUSES = new Set([301, 302, 303, 307, 308]);
+
+// Loopback, private, link-local (cloud metadata), CGNAT, multicast and reserved ranges
+const BLOCKED = new net.BlockList();
+for (const [network, prefix] of [
+  ['0.0.0.0', 8], ['10.0.0.0', 8], ['100.64.0.0', 10], ['127.0.0.0', 8], ['169.254.0.0', 16],
+  ['172.16.0.0', 12], ['192.0.0.0', 24], ['192.0.2.0', 24], ['192.168.0.0', 16], ['198.18.0.0', 15],
+  ['198.51.100.0', 24], ['203.0.113.0', 24], ['224.0.0.0', 4], ['240.0.0.0', 4]
+]) {
+  BLOCKED.addSubnet(network, prefix, 'ipv4');
+}
+for (const [network, prefix] of [
+  ['::', 128], ['::1', 128], ['64:ff9b::', 96], ['100::', 64], ['2001:db8::', 32],
+  ['fc00::', 7], ['fe80::', 10], ['ff00::', 8]
+]) {
+  BLOCKED.addSubnet(network, prefix, 'ipv6');
+}
+
+// Error code of refused hops, node-fetch passes a socket error's code through
+const BLOCKED_ADDRESS = 'EBLOCKEDADDRESS';
+
+function blocked(message) {
+  return Object.assign(new Error(message), { code: BLOCKED_ADDRESS });
+}
+
+function isPublicAddress(address) {
+  const family = net.isIP(address);
+  if (family === 0) return false;
+  // IPv4-mapped IPv6 addresses are checked against the IPv4 ranges
+  return !BLOCKED.check(address, family === 4 ? 'ipv4' : 'ipv6');
+}
+
+// dns.lookup with every resolved address checked, used by the sockets themselves
+function publicLookup(hostname, options, callback) {
+  dns.lookup(hostname, options, (error, address, family) => {
+    if (error) return callback(error);
+    const addresses = Array.isArray(address) ? address : [{ address, family }];
+    const refused = addresses.find(entry => !isPublicAddress(entry.address));
+    if (refused) {
+      return callback(blocked(`${hostname} resolves to non-public address ${refused.address}`));
+    }
+    callback(null, address, family);
+  });
+}
+
+const agents = {
+  'http:': new http.Agent({ lookup: publicLookup }),
+  'https:': new https.Agent({ lookup: publicLookup })
+};
+
+function checkUrl(url) {
+  const parsed = new URL(url);
+  if (!agents[parsed.protocol]) {
+    throw blocked(`Unsupported protocol ${parsed.protocol}`);
+  }
+  // Sockets skip the lookup for IP literals
+  const host = parsed.hostname.replace(/^\[(.*)\]$/, '$1');
+  if (net.isIP(host) && !isPublicAddress(host)) {
+    throw blocked(`${host} is not a public address`);
+  }
+  return parsed;
+}
+
+/**
+ * node-fetch for URLs that must resolve to public addresses, redirects included. Rejects with
+ * code BLOCKED_ADDRESS when any hop points elsewhere.
+ */
+async function fetchPublic(url, options = {}) {
+  let current = url;
+  for (let hop = 0; hop <= MAX_REDIRECTS; hop++) {
+    const parsed = checkUrl(current);
+    const response = await fetch(current, { ...options, redirect: 'manual', agent: agents[parsed.protocol] });
+    const location = response.headers.get('location');
+    if (!REDIRECT_STATUSES.has(response.status) || !location) {
+      return response;
+    }
+    current = new URL(location, current).href;
+  }
+  throw new Error(`More than ${MAX_REDIRECTS} redirects for ${url}`);
+}
+
+module.exports = {
+  fetchPublic,
+  isPublicAddress,
+  BLOCKED_ADDRESS
+};
@@ -112,6 +112,7 @@ app.post('/api/send-notification', async (req, res) => {
       data = {},
       imageUrl,
       sound = 'default',
+      channelId = 'default',
       badge,
       clickAction,
       deepLink,
@@ -143,6 +144,7 @@ app.post('/api/send-notification', async (req, res) => {
       },
       data: stringifyData({
         ...data,
+        channelId: channelId,
         deepLink: deepLink || '',
         webLink: webLink || '',
         clickAction: clickAction || 'OPEN_APP',
@@ -151,12 +153,13 @@ app.post('/api/send-notification', async (req, res) => {
       android: {
         notification: {
           sound: sound,
-          channelId: 'default',
+          channelId: channelId,
           priority: 'high',
           tag: 'timeless_notification'
         },
         data: stringifyData({
           ...data,
+          channelId: channelId,
           deepLink: deepLink || '',
           webLink: webLink || '',
           click_action: 'OPEN_APP',
@@ -221,7 +224,8 @@ app.post('/api/send-bulk-notifications', async (req, res) => {
       body, 
       data = {},
       imageUrl,
-      sound = 'default'
+      sound = 'default',
+      channelId = 'default'
     } = req.body;
 
     if (!tokens || !Array.isArray(tokens) || tokens.length === 0) {
@@ -253,12 +257,13 @@ app.post('/api/send-bulk-notifications', async (req, res) => {
       },
       data: stringifyData({
         ...data,
+        channelId: channelId,
         timestamp: Date.now().toString()
       }),
       android: {
         notification: {
           sound: sound,
-          channelId: 'default',
+          channelId: channelId,
           priority: 'high'
         }
       },
@@ -314,6 +319,7 @@ app.post('/api/send-topic-notification', async (req, res) => {
       data = {},
       imageUrl,
       sound = 'default',
+      channelId = 'default',
       deepLink,
       webLink
     } = req.body;
@@ -342,6 +348,7 @@ app.post('/api/send-topic-notification', async (req, res) => {
       },
       data: stringifyData({
         ...data,
+        channelId: channelId,
         deepLink: deepLink || '',
         webLink: webLink || '',
         timestamp: Date.now().toString()
@@ -349,7 +356,7 @@ app.post('/api/send-topic-notification', async (req, res) => {
       android: {
         notification: {
           sound: sound,
-          channelId: 'default',
+          channelId: channelId,
           priority: 'high'
         }
       },
@@ -431,31 +438,129 @@ app.post('/api/validate-token', async (req, res) => {
   }
 });
 
-// Register FCM token from mobile app
+// Registered tokens and their topic subscriptions
+// Kept in memory here; replace with your database
+const tokenRegistry = new Map();
+const MAX_REGISTRATIONS_PER_REQUEST = 500;
+// FCM accepts at most 1000 tokens per topic management call
+const TOPIC_BATCH_SIZE = 1000;
+const TOPIC_NAME_PATTERN = /^[a-zA-Z0-9\-_.~%]+$/;
+
+// Run topic (un)subscriptions grouped by topic, one FCM call per topic and 1000 tokens
+const applyTopicChanges = async (changes, method) => {
+  let successCount = 0;
+  for (const [topic, tokens] of changes) {
+    const tokenList = [...tokens];
+    for (let i = 0; i < tokenList.length; i += TOPIC_BATCH_SIZE) {
+      const response = await admin.messaging()[method](tokenList.slice(i, i + TOPIC_BATCH_SIZE), topic);
+      successCount += response.successCount;
+    }
+  }
+  return successCount;
+};
+
+// Register FCM tokens from mobile apps
+// Accepts a single registration (legacy) or a batch: { registrations: [{ token, previousToken, topics, removedTopics, ... }] }
 app.post('/api/register-token', async (req, res) => {
   try {
-    const { token, platform, userId, appName, timestamp } = req.body;
+    const batched = Array.isArray(req.body.registrations);
+    const registrations = batched ? req.body.registrations : [req.body];
 
-    if (!token) {
+    if (registrations.length === 0 || registrations.length > MAX_REGISTRATIONS_PER_REQUEST) {
       return res.status(400).json({ 
-        error: 'Token is required' 
+        error: `Between 1 and ${MAX_REGISTRATIONS_PER_REQUEST} registrations are allowed per request` 
       });
     }
 
-    console.log('📱 New FCM token registered:');
-    console.log('   Token (first 50 chars):', token.substring(0, 50) + '...');
-    console.log('   Platform:', platform || 'unknown');
-    console.log('   User ID:', userId || 'unknown');
-    console.log('   App:', appName || 'unknown');
-    console.log('   Timestamp:', timestamp || new Date().toISOString());
+    for (const registration of registrations) {
+      if (!registration || !registration.token) {
+        return res.status(400).json({ 
+          error: 'Token is required' 
+        });
+      }
+      const topics = [...(registration.topics || []), ...(registration.removedTopics || [])];
+      if (!topics.every(topic => typeof topic === 'string' && TOPIC_NAME_PATTERN.test(topic))) {
+        return res.status(400).json({ 
+          error: 'Invalid topic name' 
+        });
+      }
+    }
+
+    // Work out what actually changed, so repeated registrations cost nothing
+    const subscribe = new Map();
+    const unsubscribe = new Map();
+    const addChange = (changes, topic, token) => {
+      if (!changes.has(topic)) changes.set(topic, new Set());
+      changes.get(topic).add(token);
+    };
+    const updates = [];
+    for (const registration of registrations) {
+      const { token, previousToken, platform, userId, appName, appId, appVersion } = registration;
+      const known = tokenRegistry.get(token);
+      const knownTopics = new Set(known ? known.topics : []);
+      // A refreshed token inherits the old one's topics, FCM subscriptions don't move with it
+      const previous = previousToken && previousToken !== token ? tokenRegistry.get(previousToken) : null;
+      const topics = new Set([...knownTopics, ...(previous ? previous.topics : []), ...(registration.topics || [])]);
+      for (const topic of registration.removedTopics || []) {
+        if (topics.delete(topic)) addChange(unsubscribe, topic, token);
+      }
+      for (const topic of topics) {
+        if (!knownTopics.has(topic)) addChange(subscribe, topic, token);
+      }
+
+      const status = !known ? 'registered'
+        : topics.size === knownTopics.size && [...topics].every(topic => knownTopics.has(topic)) ? 'unchanged' : 'updated';
+      updates.push({
+        token,
+        previousToken,
+        status,
+        entry: {
+          topics: [...topics],
+          platform: platform || 'unknown',
+          userId: userId || known?.userId || previous?.userId,
+          app: appId || appName || 'unknown',
+          appVersion,
+          registeredAt: known?.registeredAt || new Date().toISOString(),
+          updatedAt: new Date().toISOString()
+        }
+      });
+    }
+
+    if ((subscribe.size > 0 || unsubscribe.size > 0) && !firebaseInitialized) {
+      // 503 so clients keep the change and retry with backoff
+      return res.status(503).json({ 
+        error: 'Firebase not initialized' 
+      });
+    }
+    const subscribed = await applyTopicChanges(subscribe, 'subscribeToTopic');
+    const unsubscribed = await applyTopicChanges(unsubscribe, 'unsubscribeFromTopic');
+
+    for (const update of updates) {
+      // A refreshed token replaces the old one, which FCM no longer delivers to
+      if (update.previousToken && update.previousToken !== update.token) {
+        tokenRegistry.delete(update.previousToken);
+      }
+      tokenRegistry.set(update.token, update.entry);
+    }
+
+    const counts = updates.reduce((acc, update) => {
+      acc[update.status] = (acc[update.status] || 0) + 1;
+      return acc;
+    }, {});
+    console.log(`📱 Token registration batch: ${updates.length} tokens`, counts,
+      `- topic subscriptions: +${subscribed} / -${unsubscribed}, known tokens: ${tokenRegistry.size}`);
 
-    // Here you would typically save to your database
-    // For now, we'll just acknowledge the registration
-    
     res.json({
       success: true,
       message: 'Token registered successfully',
-      tokenLength: token.length,
+      ...(batched ? {} : { tokenLength: updates[0].token.length }),
+      results: updates.map(update => ({
+        token: update.token.substring(0, 12) + '...',
+        status: update.status,
+        topics: update.entry.topics
+      })),
+      topicSubscriptions: subscribed,
+      topicUnsubscriptions: unsubscribed,
       registeredAt: new Date().toISOString()
     });
 
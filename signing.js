@@ -0,0 +1,366 @@
+/**
+ * Keystores and signing for EZ-GEN
+ *
+ * Release keystores used to come from two keytool runs per app (generate, then list to verify),
+ * each a full JVM start. They are now written in-process: RSA keys come from a small pool that
+ * is refilled in the background, the self-signed certificate and the PKCS#12 container
+ * (PBES2/AES-256 key bag, HMAC-SHA256 integrity) are encoded here with Node's crypto, in the
+ * same format keytool produces and AGP, apksigner and jarsigner read.
+ *
+ * Archives are signed by the long-lived Gradle build worker JVM: APKs with apksig (the library
+ * behind apksigner, loaded from build-tools) and bundles with the JDK's JarSigner, so re-signing
+ * never needs a rebuild or a new JVM. The apksigner/jarsigner CLIs remain the fallback.
+ * stripSignatures() turns a signed archive back into an unsigned one for the build cache.
+ */
+
+const path = require('path');
+const crypto = require('crypto');
+const { promisify } = require('util');
+const fs = require('fs-extra');
+const { spawn } = require('child_process');
+const { signArchive } = require('./gradle-build-worker');
+
+const generateKeyPair = promisify(crypto.generateKeyPair);
+
+const KEY_SIZE = 2048;
+const KEY_POOL_SIZE = Math.max(0, parseInt(process.env.KEYSTORE_POOL_SIZE, 10) || 2);
+const VALIDITY_DAYS = 10000;
+const MAC_ITERATIONS = 10000;
+
+const OID = {
+  rsaEncryption: '1.2.840.113549.1.1.1',
+  sha256WithRSAEncryption: '1.2.840.113549.1.1.11',
+  sha256: '2.16.840.1.101.3.4.2.1',
+  data: '1.2.840.113549.1.7.1',
+  pkcs8ShroudedKeyBag: '1.2.840.113549.1.12.10.1.2',
+  certBag: '1.2.840.113549.1.12.10.1.3',
+  x509Certificate: '1.2.840.113549.1.9.22.1',
+  friendlyName: '1.2.840.113549.1.9.20',
+  localKeyId: '1.2.840.113549.1.9.21',
+  subjectKeyIdentifier: '2.5.29.14',
+  commonName: '2.5.4.3',
+  organizationalUnit: '2.5.4.11',
+  organization: '2.5.4.10',
+  locality: '2.5.4.7',
+  state: '2.5.4.8',
+  country: '2.5.4.6'
+};
+
+// Minimal DER encoding, enough for a certificate and a PKCS#12 file
+function der(tag, content) {
+  const length = content.length;
+  if (length < 0x80) return Buffer.concat([Buffer.from([tag, length]), content]);
+  const lengthBytes = [];
+  for (let remaining = length; remaining > 0; remaining >>= 8) lengthBytes.unshift(remaining & 0xff);
+  return Buffer.concat([Buffer.from([tag, 0x80 | lengthBytes.length, ...lengthBytes]), content]);
+}
+const sequence = (...items) => der(0x30, Buffer.concat(items));
+const set = (...items) => der(0x31, Buffer.concat(items));
+const explicit = (tagNumber, content) => der(0xa0 + tagNumber, content);
+const octetString = bytes => der(0x04, bytes);
+const bitString = bytes => der(0x03, Buffer.concat([Buffer.from([0]), bytes]));
+const nullValue = () => Buffer.from([0x05, 0x00]);
+const utf8String = value => der(0x0c, Buffer.from(value, 'utf8'));
+const printableString = value => der(0x13, Buffer.from(value, 'ascii'));
+const bmpString = value => der(0x1e, Buffer.from(value, 'utf16le').swap16());
+
+function integer(value) {
+  let bytes = Buffer.isBuffer(value) ? value : Buffer.from(value.toString(16).padStart(2, '0').replace(/^(.(..)*)$/, '0$1'), 'hex');
+  let start = 0;
+  while (start < bytes.length - 1 && bytes[start] === 0 && bytes[start + 1] < 0x80) start++;
+  bytes = bytes.subarray(start);
+  return der(0x02, bytes[0] >= 0x80 ? Buffer.concat([Buffer.from([0]), bytes]) : bytes);
+}
+
+function objectIdentifier(dotted) {
+  const parts = dotted.split('.').map(Number);
+  const bytes = [parts[0] * 40 + parts[1]];
+  for (const part of parts.slice(2)) {
+    const encoded = [part & 0x7f];
+    for (let remaining = part >> 7; remaining > 0; remaining >>= 7) encoded.unshift((remaining & 0x7f) | 0x80);
+    bytes.push(...encoded);
+  }
+  return der(0x06, Buffer.from(bytes));
+}
+
+// UTCTime until 2049, GeneralizedTime after, as RFC 5280 requires
+function time(date) {
+  const iso = date.toISOString().replace(/[-:T]/g, '').slice(0, 14);
+  return date.getUTCFullYear() < 2050
+    ? der(0x17, Buffer.from(`${iso.slice(2)}Z`, 'ascii'))
+    : der(0x18, Buffer.from(`${iso}Z`, 'ascii'));
+}
+
+function distinguishedName({ commonName, organizationalUnit, organization, locality, state, country }) {
+  const rdn = (oid, value) => set(sequence(objectIdentifier(oid), value));
+  return sequence(
+    rdn(OID.country, printableString(country)),
+    rdn(OID.state, utf8String(state)),
+    rdn(OID.locality, utf8String(locality)),
+    rdn(OID.organization, utf8String(organization)),
+    rdn(OID.organizationalUnit, utf8String(organizationalUnit)),
+    rdn(OID.commonName, utf8String(commonName))
+  );
+}
+
+function selfSignedCertificate({ publicKey, privateKey }, subject) {
+  const spki = publicKey.export({ type: 'spki', format: 'der' });
+  const signatureAlgorithm = sequence(objectIdentifier(OID.sha256WithRSAEncryption), nullValue());
+  const name = distinguishedName(subject);
+  const notBefore = new Date();
+  const notAfter = new Date(notBefore.getTime() + VALIDITY_DAYS * 24 * 60 * 60 * 1000);
+  const serial = crypto.randomBytes(8);
+  serial[0] &= 0x7f;
+
+  const tbsCertificate = sequence(
+    explicit(0, integer(2)),
+    integer(serial),
+    signatureAlgorithm,
+    name,
+    sequence(time(notBefore), time(notAfter)),
+    name,
+    spki,
+    explicit(3, sequence(
+      sequence(objectIdentifier(OID.subjectKeyIdentifier), octetString(octetString(crypto.createHash('sha1').update(spki).digest())))
+    ))
+  );
+  const signature = crypto.sign('sha256', tbsCertificate, privateKey);
+  return sequence(tbsCertificate, signatureAlgorithm, bitString(signature));
+}
+
+// RFC 7292 appendix B.2 key derivation, used for the PKCS#12 MAC key
+function pkcs12Kdf(password, salt, id, iterations, length) {
+  const u = 32;
+  const v = 64;
+  const passwordBytes = Buffer.concat([Buffer.from(password, 'utf16le').swap16(), Buffer.alloc(2)]);
+  const fill = bytes => {
+    const filled = Buffer.alloc(v * Math.ceil(bytes.length / v));
+    for (let i = 0; i < filled.length; i++) filled[i] = bytes[i % bytes.length];
+    return filled;
+  };
+  const input = Buffer.concat([fill(salt), fill(passwordBytes)]);
+  const diversifier = Buffer.alloc(v, id);
+  const output = [];
+
+  for (let produced = 0; produced < length; produced += u) {
+    let block = crypto.createHash('sha256').update(diversifier).update(input).digest();
+    for (let i = 1; i < iterations; i++) {
+      block = crypto.createHash('sha256').update(block).digest();
+    }
+    output.push(block);
+
+    const b = fill(block);
+    for (let offset = 0; offset < input.length; offset += v) {
+      let carry = 1;
+      for (let i = v - 1; i >= 0; i--) {
+        carry += input[offset + i] + b[i];
+        input[offset + i] = carry & 0xff;
+        carry >>= 8;
+      }
+    }
+  }
+  return Buffer.concat(output).subarray(0, length);
+}
+
+function pkcs12({ privateKey, certificate, alias, password }) {
+  const localKeyId = crypto.createHash('sha1').update(certificate).digest();
+  const attributes = set(
+    sequence(objectIdentifier(OID.friendlyName), set(bmpString(alias))),
+    sequence(objectIdentifier(OID.localKeyId), set(octetString(localKeyId)))
+  );
+  // PBES2 with PBKDF2-HMAC-SHA256 and AES-256-CBC
+  const encryptedKey = privateKey.export({ type: 'pkcs8', format: 'der', cipher: 'aes-256-cbc', passphrase: password });
+
+  const certBag = sequence(
+    objectIdentifier(OID.certBag),
+    explicit(0, sequence(objectIdentifier(OID.x509Certificate), explicit(0, octetString(certificate)))),
+    attributes
+  );
+  const keyBag = sequence(objectIdentifier(OID.pkcs8ShroudedKeyBag), explicit(0, encryptedKey), attributes);
+  const dataContent = safeContents => sequence(objectIdentifier(OID.data), explicit(0, octetString(safeContents)));
+  const authenticatedSafe = sequence(dataContent(sequence(certBag)), dataContent(sequence(keyBag)));
+
+  const macSalt = crypto.randomBytes(20);
+  const macKey = pkcs12Kdf(password, macSalt, 3, MAC_ITERATIONS, 32);
+  const mac = crypto.createHmac('sha256', macKey).update(authenticatedSafe).digest();
+  const macData = sequence(
+    sequence(sequence(objectIdentifier(OID.sha256), nullValue()), octetString(mac)),
+    octetString(macSalt),
+    integer(MAC_ITERATIONS)
+  );
+
+  return sequence(integer(3), dataContent(authenticatedSafe), macData);
+}
+
+// RSA key generation is the slow part (tens to hundreds of ms), so a few keys are kept ready
+const keyPool = [];
+let refilling = null;
+
+function refillKeyPool() {
+  if (refilling || keyPool.length >= KEY_POOL_SIZE) return;
+  refilling = (async () => {
+    while (keyPool.length < KEY_POOL_SIZE) {
+      keyPool.push(await generateKeyPair('rsa', { modulusLength: KEY_SIZE, publicExponent: 0x10001 }));
+    }
+  })()
+    .catch(error => console.warn('⚠️ Keystore pool refill failed:', error.message))
+    .finally(() => { refilling = null; });
+}
+
+async function takeKeyPair() {
+  const keyPair = keyPool.shift() || await generateKeyPair('rsa', { modulusLength: KEY_SIZE, publicExponent: 0x10001 });
+  refillKeyPool();
+  return keyPair;
+}
+
+/**
+ * Write a PKCS#12 keystore holding one RSA key and its self-signed certificate
+ */
+async function createKeystore({ keystorePath, alias, password, subject }) {
+  const keyPair = await takeKeyPair();
+  const certificate = selfSignedCertificate(keyPair, {
+    organizationalUnit: 'Mobile Development',
+    locality: 'City',
+    state: 'State',
+    country: 'US',
+    ...subject
+  });
+  await fs.writeFile(keystorePath, pkcs12({ privateKey: keyPair.privateKey, certificate, alias, password }));
+  return {
+    certificateSha256: crypto.createHash('sha256').update(certificate).digest('hex').toUpperCase().match(/../g).join(':')
+  };
+}
+
+function runTool(command, args) {
+  return new Promise((resolve, reject) => {
+    const proc = spawn(command, args, { stdio: 'pipe' });
+    let output = '';
+    proc.stdout.on('data', (data) => { output += data.toString(); });
+    proc.stderr.on('data', (data) => { output += data.toString(); });
+    proc.on('error', reject);
+    proc.on('close', (code) => code === 0 ? resolve(output) : reject(new Error(`${path.basename(command)} failed: ${output.slice(-500)}`)));
+  });
+}
+
+/**
+ * Sign an aligned APK (v1, v2 and v3 schemes); `apksigner` is the build-tools apksigner path,
+ * apksig is loaded from the lib/apksigner.jar next to it
+ */
+async function signApk({ input, output, keystorePath, keystoreInfo, apksigner }) {
+  const apksigJar = path.join(path.dirname(apksigner), 'lib', 'apksigner.jar');
+  if (await fs.pathExists(apksigJar)) {
+    try {
+      await signArchive({
+        format: 'apk',
+        input,
+        output,
+        apksigJar,
+        keystore: keystorePath,
+        storePassword: keystoreInfo.keystorePassword,
+        alias: keystoreInfo.keyAlias,
+        keyPassword: keystoreInfo.keyPassword
+      });
+      return;
+    } catch (error) {
+      console.log(`⚠️  In-process APK signing unavailable, using apksigner: ${error.message}`);
+    }
+  }
+
+  await runTool(apksigner, [
+    'sign',
+    '--ks', keystorePath,
+    '--ks-pass', `pass:${keystoreInfo.keystorePassword}`,
+    '--ks-key-alias', keystoreInfo.keyAlias,
+    '--key-pass', `pass:${keystoreInfo.keyPassword}`,
+    '--out', output,
+    input
+  ]);
+}
+
+/**
+ * JAR-sign an app bundle in place, as Play expects from the upload key
+ */
+async function signBundle({ bundle, keystorePath, keystoreInfo }) {
+  const signedBundle = `${bundle}.signed`;
+  try {
+    await signArchive({
+      format: 'jar',
+      input: bundle,
+      output: signedBundle,
+      keystore: keystorePath,
+      storePassword: keystoreInfo.keystorePassword,
+      alias: keystoreInfo.keyAlias,
+      keyPassword: keystoreInfo.keyPassword
+    });
+    await fs.move(signedBundle, bundle, { overwrite: true });
+    return;
+  } catch (error) {
+    await fs.remove(signedBundle);
+    console.log(`⚠️  In-process bundle signing unavailable, using jarsigner: ${error.message}`);
+  }
+
+  await runTool('jarsigner', [
+    '-keystore', keystorePath,
+    '-storepass', keystoreInfo.keystorePassword,
+    '-keypass', keystoreInfo.keyPassword,
+    bundle,
+    keystoreInfo.keyAlias
+  ]);
+}
+
+// JAR signature files, the manifest stays (its digests hold nothing per signer)
+const SIGNATURE_ENTRY = /^META-INF\/[^/]+\.(SF|RSA|DSA|EC)$/i;
+
+/**
+ * Copy an APK or bundle without its signatures: the META-INF signature files are left out and
+ * the APK Signing Block, which sits between the entries and the central directory, is not
+ * copied. Entries are copied as stored; apksig restores the alignment when signing again.
+ */
+async function stripSignatures(input, output) {
+  const zip = await fs.readFile(input);
+  const eocd = zip.lastIndexOf(Buffer.from([0x50, 0x4b, 0x05, 0x06]));
+  if (eocd < 0) throw new Error(`${path.basename(input)} is not a zip archive`);
+  const entryCount = zip.readUInt16LE(eocd + 10);
+  const centralDirectoryOffset = zip.readUInt32LE(eocd + 16);
+
+  const records = [];
+  const centralDirectory = [];
+  let recordsLength = 0;
+  for (let offset = centralDirectoryOffset, i = 0; i < entryCount; i++) {
+    const nameLength = zip.readUInt16LE(offset + 28);
+    const headerLength = 46 + nameLength + zip.readUInt16LE(offset + 30) + zip.readUInt16LE(offset + 32);
+    const name = zip.toString('utf8', offset + 46, offset + 46 + nameLength);
+    if (!SIGNATURE_ENTRY.test(name)) {
+      const flags = zip.readUInt16LE(offset + 8);
+      const compressedSize = zip.readUInt32LE(offset + 20);
+      const localOffset = zip.readUInt32LE(offset + 42);
+      let end = localOffset + 30 + zip.readUInt16LE(localOffset + 26) + zip.readUInt16LE(localOffset + 28) + compressedSize;
+      // Data descriptor after the data, with or without its optional signature
+      if (flags & 0x08) end += zip.readUInt32LE(end) === 0x08074b50 ? 16 : 12;
+
+      const header = Buffer.from(zip.subarray(offset, offset + headerLength));
+      header.writeUInt32LE(recordsLength, 42);
+      records.push(zip.subarray(localOffset, end));
+      centralDirectory.push(header);
+      recordsLength += end - localOffset;
+    }
+    offset += headerLength;
+  }
+
+  const centralDirectoryLength = centralDirectory.reduce((sum, header) => sum + header.length, 0);
+  const endRecord = Buffer.from(zip.subarray(eocd));
+  endRecord.writeUInt16LE(centralDirectory.length, 8);
+  endRecord.writeUInt16LE(centralDirectory.length, 10);
+  endRecord.writeUInt32LE(centralDirectoryLength, 12);
+  endRecord.writeUInt32LE(recordsLength, 16);
+  await fs.writeFile(output, Buffer.concat([...records, ...centralDirectory, endRecord]));
+}
+
+refillKeyPool();
+
+module.exports = {
+  createKeystore,
+  signApk,
+  signBundle,
+  stripSignatures
+};
@@ -209,6 +209,7 @@ class TestResults {
       networkErrors: 0,
       serverErrors: 0,
       timeouts: 0,
+      queueFull: 0,
       unexpectedResults: 0
     };
     this.startTime = performance.now();
@@ -234,6 +235,9 @@ class TestResults {
       case 'TIMEOUT':
         this.stats.timeouts++;
         break;
+      case 'QUEUE_FULL':
+        this.stats.queueFull++;
+        break;
       default:
         this.stats.unexpectedResults++;
     }
@@ -333,6 +337,10 @@ class TestRunner {
         result.status = 'UNEXPECTED_SUCCESS';
         result.message = 'Test failed - invalid request succeeded';
       }
+    } else if (response.status === 429) {
+      // Backpressure from the build queue, not a validation failure
+      result.status = 'QUEUE_FULL';
+      result.message = `Build queue full, retry after ${response.headers['retry-after'] || '?'}s`;
     } else if (response.status >= 400 && response.status < 500) {
       if (scenario.expectedResult === 'VALIDATION_ERROR') {
         result.status = 'VALIDATION_ERROR';
@@ -389,7 +397,8 @@ class TestRunner {
       'UNEXPECTED_VALIDATION_ERROR': '❌',
       'SERVER_ERROR': '🔥',
       'NETWORK_ERROR': '🌐',
-      'TIMEOUT': '⏱️'
+      'TIMEOUT': '⏱️',
+      'QUEUE_FULL': '🚦'
     }[result.status] || '❓';
 
     const color = {
@@ -399,7 +408,8 @@ class TestRunner {
       'UNEXPECTED_VALIDATION_ERROR': colors.red,
       'SERVER_ERROR': colors.red,
       'NETWORK_ERROR': colors.yellow,
-      'TIMEOUT': colors.yellow
+      'TIMEOUT': colors.yellow,
+      'QUEUE_FULL': colors.yellow
     }[result.status] || colors.reset;
 
     this.logger.info(
@@ -489,6 +499,7 @@ class StressTest {
       networkErrors: 0,
       serverErrors: 0,
       timeouts: 0,
+      queueFull: 0,
       unexpectedResults: 0
     };
 
@@ -572,6 +583,7 @@ class StressTest {
     console.log(`   🌐 Network Errors: ${colors.red}${report.stats.networkErrors}${colors.reset}`);
     console.log(`   🔥 Server Errors: ${colors.red}${report.stats.serverErrors}${colors.reset}`);
     console.log(`   ⏱️  Timeouts: ${colors.red}${report.stats.timeouts}${colors.reset}`);
+    console.log(`   🚦 Queue Full (429): ${colors.yellow}${report.stats.queueFull}${colors.reset}`);
     
     // Scenario breakdown
     console.log(`\n${colors.bright}🧪 SCENARIO BREAKDOWN:${colors.reset}`);
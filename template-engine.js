@@ -0,0 +1,243 @@
+/**
+ * Precompiled template engine for EZ-GEN
+ *
+ * The per-app files (capacitor config, package metadata, Android resources, Gradle scripts,
+ * Firebase config, Java sources, the web layer's app-config.js) used to be re-read from disk and
+ * patched with chains of regex replacements for every app. They are now read once, split into
+ * literal segments and typed placeholders, and rendered per app in one pass: each placeholder
+ * value is escaped for the file it lands in (XML, Android string resource, JSON, JS, Gradle),
+ * every Java source under the template package is relocated to the app package, and all outputs
+ * are written together with a manifest of what was produced.
+ */
+
+const path = require('path');
+const fs = require('fs-extra');
+
+const TEMPLATE_PACKAGE = 'io.ionic.starter';
+const JAVA_ROOT = 'android/app/src/main/java';
+const MANIFEST_FILE = '.ezgen-manifest.json';
+
+const ESCAPES = {
+  raw: value => value,
+  html: value => value.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;'),
+  xml: value => value.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;').replace(/"/g, '&quot;'),
+  // aapt also treats quotes, backslashes and a leading @ or ? specially
+  androidString: value => ESCAPES.xml(value.replace(/\\/g, '\\\\').replace(/'/g, "\\'").replace(/"/g, '\\"'))
+    .replace(/^([@?])/, '\\$1'),
+  json: value => JSON.stringify(value).slice(1, -1),
+  js: value => value.replace(/\\/g, '\\\\').replace(/'/g, "\\'").replace(/\n/g, '\\n').replace(/<\//g, '<\\/'),
+  gradle: value => value.replace(/\\/g, '\\\\').replace(/"/g, '\\"').replace(/\$/g, '\\$')
+};
+
+const CAPACITOR_ASSETS_CONFIG = `webDir: 'www',
+  plugins: {
+    CapacitorAssets: {
+      iconPath: 'resources/icon.png',
+      splashPath: 'resources/splash.png',
+    }
+  }`;
+
+/**
+ * Templated files and where their placeholders are. A rule's first capture group (or the whole
+ * match without one) is replaced by the placeholder; `global` rules apply to every match.
+ */
+const TEMPLATES = [
+  {
+    file: 'capacitor.config.ts',
+    escape: 'js',
+    rules: [
+      { pattern: /appId: '(.*?)'/, placeholder: 'packageName' },
+      { pattern: /appName: '(.*?)'/, placeholder: 'appName' },
+      // Icon and splash generation config, unless the template already has it
+      { pattern: /webDir: '[^']*'/, when: source => !source.includes('CapacitorAssets'), render: (values, original) => values.hasAssets ? CAPACITOR_ASSETS_CONFIG : original }
+    ]
+  },
+  { file: 'package.json', escape: 'json', rules: [{ pattern: /"name": "(.*?)"/, placeholder: 'appSlug' }] },
+  { file: 'ionic.config.json', escape: 'json', rules: [{ pattern: /"name": "(.*?)"/, placeholder: 'appSlug' }] },
+  { file: 'src/index.html', escape: 'html', rules: [{ pattern: /<title>(.*?)<\/title>/, placeholder: 'appName' }] },
+  {
+    file: 'src/assets/app-config.js',
+    escape: 'js',
+    rules: [
+      { pattern: /appName: '(.*?)'/, placeholder: 'appName' },
+      { pattern: /appSlug: '(.*?)'/, placeholder: 'appSlug' },
+      { pattern: /websiteUrl: '(.*?)'/, placeholder: 'websiteUrl' }
+    ]
+  },
+  {
+    file: 'android/app/src/main/res/values/strings.xml',
+    escape: 'androidString',
+    rules: [
+      { pattern: /<string name="app_name">(.*?)<\/string>/, placeholder: 'appName' },
+      { pattern: /<string name="title_activity_main">(.*?)<\/string>/, placeholder: 'appName' },
+      { pattern: /<string name="package_name">(.*?)<\/string>/, placeholder: 'packageName' },
+      { pattern: /<string name="custom_url_scheme">(.*?)<\/string>/, placeholder: 'packageName' },
+      // Used to map notification deep links
+      { pattern: /\{\{WEBSITE_URL\}\}/g, placeholder: 'websiteUrl' },
+      { pattern: /\{\{APP_NAME\}\}/g, placeholder: 'appName' },
+      { pattern: /\{\{PACKAGE_NAME\}\}/g, placeholder: 'packageName' }
+    ]
+  },
+  {
+    file: 'android/app/src/main/res/values/config.xml',
+    escape: 'xml',
+    rules: [
+      // Native FCM token registration target, empty disables it
+      { pattern: /\{\{PUSH_SERVER_URL\}\}/g, placeholder: 'pushServerUrl' },
+      // Same topic the web layer subscribes to
+      { pattern: /<item>(timeless)-updates<\/item>/, placeholder: 'appSlug' }
+    ]
+  },
+  {
+    file: 'android/app/build.gradle',
+    escape: 'gradle',
+    rules: [
+      { pattern: /namespace "(.*?)"/, placeholder: 'packageName' },
+      { pattern: /applicationId "(.*?)"/, placeholder: 'packageName' },
+      { pattern: /\{\{PACKAGE_NAME\}\}/g, placeholder: 'packageName' }
+    ]
+  },
+  { file: 'android/baselineprofile/build.gradle', escape: 'gradle', rules: [{ pattern: /\{\{PACKAGE_NAME\}\}/g, placeholder: 'packageName' }] },
+  // Baseline Profile rules name the template classes by path
+  { file: 'android/app/src/main/baseline-prof.txt', escape: 'raw', rules: [{ pattern: /(io\/ionic\/starter)\//g, placeholder: 'packagePath' }] },
+  { file: 'android/app/google-services.json', escape: 'json', rules: [{ pattern: /"package_name": "(com\.ezassist\.timeless)"/g, placeholder: 'packageName' }] }
+];
+
+// Every Java source in the template package moves to the app package
+const JAVA_RULES = [
+  { pattern: /package (.*?);/, placeholder: 'packageName' },
+  { pattern: /\{\{PACKAGE_NAME\}\}/g, placeholder: 'packageName' }
+];
+
+/**
+ * Split a source into literal strings and placeholder segments
+ */
+function compile(source, rules, escape) {
+  const matches = [];
+  for (const rule of rules) {
+    if (rule.when && !rule.when(source)) continue;
+    // 'd' for the capture group's position, 'g' to walk the matches
+    const pattern = new RegExp(rule.pattern.source, `${rule.pattern.flags.replace(/[gd]/g, '')}gd`);
+    let match;
+    while ((match = pattern.exec(source)) !== null) {
+      const [start, end] = match.indices[1] || match.indices[0];
+      const text = source.slice(start, end);
+      // First rule to claim a range wins
+      if (!matches.some(other => start < other.end && end > other.start)) {
+        matches.push({ start, end, text, rule });
+      }
+      if (!rule.pattern.global) break;
+    }
+  }
+
+  matches.sort((a, b) => a.start - b.start);
+  const segments = [];
+  let position = 0;
+  for (const match of matches) {
+    segments.push(source.slice(position, match.start));
+    segments.push({ placeholder: match.rule.placeholder, render: match.rule.render, original: match.text, escape: ESCAPES[escape] });
+    position = match.end;
+  }
+  segments.push(source.slice(position));
+  return { segments, placeholders: matches.length };
+}
+
+function render(segments, values) {
+  let output = '';
+  for (const segment of segments) {
+    if (typeof segment === 'string') {
+      output += segment;
+    } else if (segment.render) {
+      output += segment.render(values, segment.original);
+    } else {
+      output += segment.escape(values[segment.placeholder]);
+    }
+  }
+  return output;
+}
+
+class TemplateEngine {
+  constructor(templateDir) {
+    this.templateDir = templateDir;
+    this.templates = [];
+  }
+
+  /**
+   * Read and compile every templated file, once at startup
+   */
+  async load() {
+    const templates = [];
+    for (const spec of TEMPLATES) {
+      const sourcePath = path.join(this.templateDir, spec.file);
+      if (!(await fs.pathExists(sourcePath))) continue;
+      const source = await fs.readFile(sourcePath, 'utf8');
+      const { segments, placeholders } = compile(source, spec.rules, spec.escape);
+      if (placeholders === 0) {
+        console.warn(`⚠️ Template engine: no placeholders found in ${spec.file}`);
+      }
+      templates.push({ file: spec.file, output: () => spec.file, segments });
+    }
+
+    const javaDir = path.join(JAVA_ROOT, ...TEMPLATE_PACKAGE.split('.'));
+    const javaFiles = (await fs.pathExists(path.join(this.templateDir, javaDir)))
+      ? (await fs.readdir(path.join(this.templateDir, javaDir))).filter(file => file.endsWith('.java'))
+      : [];
+    for (const javaFile of javaFiles) {
+      const file = `${javaDir.replace(/\\/g, '/')}/${javaFile}`;
+      const source = await fs.readFile(path.join(this.templateDir, file), 'utf8');
+      const { segments } = compile(source, JAVA_RULES, 'raw');
+      templates.push({ file, output: values => `${JAVA_ROOT}/${values.packagePath}/${javaFile}`, segments });
+    }
+
+    this.templates = templates;
+    console.log(`🧩 Template engine: ${templates.length} templated files compiled (${javaFiles.length} Java sources)`);
+    return this;
+  }
+
+  /**
+   * Render every templated file for one app into appDir and record the result in a manifest
+   */
+  async render(appDir, { appName, websiteUrl, packageName, pushServerUrl, hasAssets = false }) {
+    const values = {
+      appName,
+      appSlug: appName.toLowerCase().replace(/[^a-z0-9]/g, '-'),
+      websiteUrl,
+      packageName,
+      packagePath: packageName.replace(/\./g, '/'),
+      pushServerUrl: pushServerUrl || '',
+      hasAssets
+    };
+
+    const outputs = this.templates.map(template => ({
+      source: template.file,
+      file: template.output(values),
+      content: render(template.segments, values)
+    }));
+    // Workspace copies of relocated Java sources
+    const removed = outputs.filter(output => output.file !== output.source).map(output => output.source);
+
+    await Promise.all([...new Set(outputs.map(output => path.dirname(path.join(appDir, output.file))))]
+      .map(dir => fs.ensureDir(dir)));
+    await Promise.all(removed.map(file => fs.remove(path.join(appDir, file))));
+    // Written beside and renamed over the target, which also detaches hard-linked workspace files
+    await Promise.all(outputs.map(async (output) => {
+      const targetPath = path.join(appDir, output.file);
+      await fs.writeFile(`${targetPath}.tmp`, output.content);
+      await fs.move(`${targetPath}.tmp`, targetPath, { overwrite: true });
+    }));
+
+    const manifest = {
+      renderedAt: new Date().toISOString(),
+      packageName,
+      files: outputs.map(output => ({ file: output.file, source: output.source, bytes: Buffer.byteLength(output.content) })),
+      removed
+    };
+    await fs.writeJson(path.join(appDir, MANIFEST_FILE), manifest, { spaces: 2 });
+    return manifest;
+  }
+}
+
+module.exports = {
+  TemplateEngine,
+  ESCAPES
+};
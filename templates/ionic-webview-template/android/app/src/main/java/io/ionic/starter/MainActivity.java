@@ -1,8 +1,7 @@
 package io.ionic.starter;
 
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -10,73 +9,97 @@ import android.util.Log;
 import android.view.View;
 import android.view.WindowInsets;
 import android.view.WindowInsetsController;
-import android.webkit.WebSettings;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebView;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 import com.getcapacitor.BridgeActivity;
 import com.getcapacitor.Bridge;
+import com.getcapacitor.BridgeWebViewClient;
+import com.google.firebase.analytics.FirebaseAnalytics;
+import com.google.firebase.messaging.FirebaseMessaging;
 
 public class MainActivity extends BridgeActivity {
     
+    // Deferred work is released at the first visual state, or after this timeout at the latest
+    private static final long DEFERRED_INIT_TIMEOUT_MS = 5000;
+    
+    private final StartupScheduler startupScheduler = new StartupScheduler();
+    private WebResourceCache webResourceCache;
+    private WebSnapshotLoader webSnapshotLoader;
+    private NotificationRouter notificationRouter;
+    
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
+        StartupTracer.mark(StartupTracer.ACTIVITY_CREATE);
         
-        // Create notification channel for Android 8.0+
-        createNotificationChannel();
+        // Expose startup timings to JavaScript
+        registerPlugin(StartupTimingPlugin.class);
         
-        // Request notification permission for Android 13+
-        requestNotificationPermissionIfNeeded();
+        StartupTracer.begin("bridge_on_create");
+        super.onCreate(savedInstanceState);
+        StartupTracer.end("bridge_on_create");
+        StartupTracer.mark(StartupTracer.BRIDGE_READY);
+        
+        // Non-critical work runs on idle passes once the first page has been drawn
+        scheduleDeferredInit();
         
         // Handle notification click
+        notificationRouter = new NotificationRouter(getBridge(), getString(R.string.website_url));
         handleNotificationIntent(getIntent());
         
         // Configure window insets to respect system UI (status bar, navigation bar, notch)
+        StartupTracer.begin("setup_window_insets");
         setupWindowInsets();
+        StartupTracer.end("setup_window_insets");
         
         // Configure webview settings for better external website loading
         Bridge bridge = this.getBridge();
         if (bridge != null && bridge.getWebView() != null) {
-            WebSettings webSettings = bridge.getWebView().getSettings();
-            
-            // Enable mixed content (HTTP on HTTPS)
-            webSettings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
-            
-            // Enable DOM storage
-            webSettings.setDomStorageEnabled(true);
-            
-            // Enable database storage
-            webSettings.setDatabaseEnabled(true);
+            StartupTracer.begin("configure_web_settings");
+            // Already applied when the WebView came from WebViewPrewarmer, covers Capacitor inflating its own
+            WebViewPrewarmer.configure(bridge.getWebView());
             
-            // Enable JavaScript (should already be enabled)
-            webSettings.setJavaScriptEnabled(true);
-            
-            // Allow file access
-            webSettings.setAllowFileAccess(true);
-            webSettings.setAllowContentAccess(true);
-            
-            // Enable zooming
-            webSettings.setSupportZoom(true);
-            webSettings.setBuiltInZoomControls(true);
-            webSettings.setDisplayZoomControls(false);
-            
-            // Enhanced caching for faster loading
-            webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
-            webSettings.setDatabaseEnabled(true);
-            webSettings.setDomStorageEnabled(true);
-            
-            // Enable additional caching mechanisms
-            String cacheDirPath = getCacheDir().getAbsolutePath();
-            webSettings.setDatabasePath(cacheDirPath);
-            
-            // Optimize loading performance
-            webSettings.setRenderPriority(WebSettings.RenderPriority.HIGH);
-            webSettings.setLoadWithOverviewMode(true);
-            webSettings.setUseWideViewPort(true);
-            
-            // Set user agent to help with compatibility
-            String userAgent = webSettings.getUserAgentString();
-            webSettings.setUserAgentString(userAgent + " CapacitorWebView");
+            // Serve static subresources from the native disk cache
+            setupWebResourceCache(bridge);
+            StartupTracer.end("configure_web_settings");
+        }
+    }
+    
+    @Override
+    public void setContentView(int layoutResID) {
+        // BridgeActivity inflates a new WebView here, hand it the pre-warmed one instead
+        if (layoutResID == com.getcapacitor.android.R.layout.capacitor_bridge_layout_main) {
+            boolean prewarmed = WebViewPrewarmer.hasPrewarmedWebView();
+            StartupTracer.begin("webview_create");
+            View content = WebViewPrewarmer.createBridgeLayout(this);
+            StartupTracer.end("webview_create");
+            StartupTracer.mark(StartupTracer.WEBVIEW_CREATED, prewarmed ? "prewarmed" : "created");
+            super.setContentView(content);
+            return;
+        }
+        super.setContentView(layoutResID);
+    }
+    
+    @Override
+    public void onContentChanged() {
+        super.onContentChanged();
+        // BridgeActivity inflates the Capacitor WebView with its content view
+        StartupTracer.mark(StartupTracer.WEBVIEW_CREATED);
+    }
+    
+    @Override
+    public void onDestroy() {
+        startupScheduler.cancel();
+        super.onDestroy();
+    }
+    
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (webResourceCache != null) {
+            webResourceCache.logStats();
         }
     }
     
@@ -120,44 +143,117 @@ public class MainActivity extends BridgeActivity {
                 if (deepLink.startsWith("http")) {
                     navigateInWebView(deepLink);
                 } else {
-                    // Handle internal app routes - could pass to Capacitor
-                    android.util.Log.d("MainActivity", "📱 Internal route: " + deepLink);
+                    // Map internal app routes onto the website
+                    String currentUrl = getBridge() != null && getBridge().getWebView() != null
+                        ? getBridge().getWebView().getUrl() : null;
+                    String routeUrl = notificationRouter.resolveDeepLink(deepLink, currentUrl);
+                    android.util.Log.d("MainActivity", "📱 Internal route: " + deepLink + " -> " + routeUrl);
+                    if (routeUrl != null) {
+                        navigateInWebView(routeUrl);
+                    }
                 }
             }
         }
     }
     
     private void navigateInWebView(String url) {
-        Bridge bridge = this.getBridge();
-        if (bridge != null && bridge.getWebView() != null) {
-            // Use runOnUiThread to ensure we're on the main thread
-            runOnUiThread(() -> {
-                try {
-                    // Navigate within the webview instead of opening external browser
-                    bridge.getWebView().loadUrl(url);
-                    android.util.Log.d("MainActivity", "✅ Successfully navigated to: " + url);
-                } catch (Exception e) {
-                    android.util.Log.e("MainActivity", "❌ Failed to navigate in webview: " + e.getMessage());
-                }
-            });
+        // Same-origin targets are handed to the running page, everything else is loaded
+        if (notificationRouter != null) {
+            notificationRouter.navigate(url);
         } else {
             android.util.Log.e("MainActivity", "❌ WebView not available for navigation");
         }
     }
     
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            CharSequence name = "Default";
-            String description = "Default notification channel";
-            int importance = NotificationManager.IMPORTANCE_HIGH;
-            NotificationChannel channel = new NotificationChannel("default", name, importance);
-            channel.setDescription(description);
-            channel.enableVibration(true);
-            channel.setShowBadge(true);
+    /**
+     * Install a WebViewClient that serves CSS/JS/fonts/images from a size-bounded disk cache,
+     * falling back to the website snapshot bundled at build time. Pages prefetched by
+     * MyFirebaseMessagingService come from the same cache when a notification is tapped.
+     */
+    private void setupWebResourceCache(Bridge bridge) {
+        webResourceCache = WebResourceCache.getInstance(this);
+        webSnapshotLoader = WebSnapshotLoader.load(this);
+        
+        bridge.setWebViewClient(new BridgeWebViewClient(bridge) {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // Capacitor's local server keeps priority for bundled app assets
+                WebResourceResponse response = super.shouldInterceptRequest(view, request);
+                if (response != null) {
+                    return response;
+                }
+                
+                // Fall back to the build-time snapshot until the cache has its own copy
+                if (webSnapshotLoader != null && !webResourceCache.contains(request)) {
+                    WebResourceResponse snapshot = webSnapshotLoader.intercept(request);
+                    if (snapshot != null) {
+                        webResourceCache.refreshInBackground(request);
+                        return snapshot;
+                    }
+                }
+                return webResourceCache.fetch(request);
+            }
             
-            NotificationManager notificationManager = getSystemService(NotificationManager.class);
-            notificationManager.createNotificationChannel(channel);
-        }
+            @Override
+            public void onPageStarted(WebView view, String url, Bitmap favicon) {
+                super.onPageStarted(view, url, favicon);
+                if (!StartupTracer.hasMark(StartupTracer.FIRST_PAGE_STARTED)) {
+                    StartupTracer.mark(StartupTracer.FIRST_PAGE_STARTED, url);
+                    // Fires once the DOM at this point has been drawn to the screen
+                    view.postVisualStateCallback(0, new WebView.VisualStateCallback() {
+                        @Override
+                        public void onComplete(long requestId) {
+                            StartupTracer.mark(StartupTracer.FIRST_VISUAL_STATE, url);
+                            // Written once the first page has also finished, see onPageFinished
+                            StartupTracer.writeReport(MainActivity.this);
+                            startupScheduler.release();
+                        }
+                    });
+                }
+            }
+            
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                super.onPageFinished(view, url);
+                StartupTracer.mark(StartupTracer.FIRST_PAGE_FINISHED, url);
+                StartupTracer.writeReport(MainActivity.this);
+            }
+        });
+        Log.d("MainActivity", "📦 Web resource cache installed (" + (webResourceCache.getMaxBytes() / (1024 * 1024)) + " MB)");
+    }
+    
+    /**
+     * Queue startup work that must not compete with the first frame
+     */
+    private void scheduleDeferredInit() {
+        // Create notification channels for Android 8.0+
+        startupScheduler.schedule("create_notification_channel", StartupScheduler.PRIORITY_HIGH,
+            this::createNotificationChannel);
+        
+        // Request notification permission for Android 13+
+        startupScheduler.schedule("notification_permission", StartupScheduler.PRIORITY_NORMAL,
+            this::requestNotificationPermissionIfNeeded);
+        
+        startupScheduler.schedule("firebase_analytics", StartupScheduler.PRIORITY_LOW,
+            () -> FirebaseAnalytics.getInstance(this));
+        
+        startupScheduler.schedule("fcm_token_refresh", StartupScheduler.PRIORITY_LOW, () ->
+            FirebaseMessaging.getInstance().getToken().addOnCompleteListener(task -> {
+                if (task.isSuccessful()) {
+                    Log.d("MainActivity", "🔑 FCM token ready");
+                    // No upload unless the token or topics changed since the server acknowledged them
+                    TokenRegistrar.onToken(this, task.getResult());
+                } else {
+                    Log.w("MainActivity", "⚠️ FCM token refresh failed: " + task.getException());
+                }
+            }));
+        
+        startupScheduler.releaseAfter(DEFERRED_INIT_TIMEOUT_MS);
+    }
+    
+    private void createNotificationChannel() {
+        // Channels come from res/raw/notification_channels.json and are only registered once per app version
+        NotificationChannelRegistry.ensureChannels(this);
     }
     
     private void setupWindowInsets() {
@@ -206,18 +302,13 @@ public class MainActivity extends BridgeActivity {
     private void requestNotificationPermissionIfNeeded() {
         Log.d("MainActivity", "Checking notification permission status...");
         
-        // Use a delay to ensure the activity is fully loaded
-        new android.os.Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                if (!NotificationPermissionHelper.hasNotificationPermission(MainActivity.this)) {
-                    Log.d("MainActivity", "Notification permission not granted, requesting...");
-                    NotificationPermissionHelper.requestNotificationPermission(MainActivity.this);
-                } else {
-                    Log.d("MainActivity", "Notification permission already granted");
-                }
-            }
-        }, 2000); // 2 second delay to ensure activity is ready
+        // Runs from the startup scheduler, so the activity and first frame are already up
+        if (!NotificationPermissionHelper.hasNotificationPermission(this)) {
+            Log.d("MainActivity", "Notification permission not granted, requesting...");
+            NotificationPermissionHelper.requestNotificationPermission(this);
+        } else {
+            Log.d("MainActivity", "Notification permission already granted");
+        }
     }
     
     /**
@@ -0,0 +1,36 @@
+package io.ionic.starter;
+
+import android.app.ActivityManager;
+import android.app.Application;
+import android.util.Log;
+
+public class MainApplication extends Application {
+
+    private static final String TAG = "MainApplication";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Load the WebView provider while the rest of the app starts up
+        if (getResources().getBoolean(R.bool.webview_prewarm_enabled)) {
+            WebViewPrewarmer.start(this, shouldPreCreateWebView());
+        } else {
+            Log.d(TAG, "WebView pre-warming disabled");
+        }
+    }
+
+    /**
+     * A spare WebView costs memory, so low-RAM devices only pre-create one when the process
+     * was started to show UI rather than for a background push message
+     */
+    private boolean shouldPreCreateWebView() {
+        ActivityManager activityManager = getSystemService(ActivityManager.class);
+        if (activityManager == null || !activityManager.isLowRamDevice()) {
+            return true;
+        }
+        ActivityManager.RunningAppProcessInfo processInfo = new ActivityManager.RunningAppProcessInfo();
+        ActivityManager.getMyMemoryState(processInfo);
+        return processInfo.importance <= ActivityManager.RunningAppProcessInfo.IMPORTANCE_FOREGROUND;
+    }
+}
@@ -0,0 +1,235 @@
+package io.ionic.starter;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registers the app's notification channels from res/raw/notification_channels.json, which the
+ * generator writes per app. Channels are created once per app version and configuration, and
+ * each push picks its channel through the "channelId" (or "channel") data key.
+ */
+public final class NotificationChannelRegistry {
+    private static final String TAG = "ChannelRegistry";
+    private static final String PREFS_NAME = "notification_channels";
+    private static final String PREF_REGISTERED_FOR = "registered_for";
+    private static final String PREF_CHANNEL_IDS = "channel_ids";
+    private static final String FALLBACK_CHANNEL = "default";
+
+    private static Config config;
+    private static boolean ensured = false;
+
+    private NotificationChannelRegistry() {
+    }
+
+    /**
+     * Create the configured channels unless this app version already did, cheap to call repeatedly
+     */
+    public static synchronized void ensureChannels(Context context) {
+        if (ensured) {
+            return;
+        }
+        ensured = true;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        Config channelConfig = config(context);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String registrationKey = appVersionCode(context) + ":" + channelConfig.hash;
+        if (registrationKey.equals(prefs.getString(PREF_REGISTERED_FOR, null))) {
+            return;
+        }
+
+        NotificationManager notificationManager = context.getSystemService(NotificationManager.class);
+        List<NotificationChannel> channels = new ArrayList<>();
+        for (ChannelSpec spec : channelConfig.channels.values()) {
+            NotificationChannel channel = new NotificationChannel(spec.id, spec.name, spec.importance);
+            channel.setDescription(spec.description);
+            channel.enableVibration(spec.vibration);
+            channel.setShowBadge(spec.showBadge);
+            if (!spec.sound) {
+                channel.setSound(null, null);
+            }
+            channels.add(channel);
+        }
+        notificationManager.createNotificationChannels(channels);
+
+        // Remove channels an earlier version registered that the configuration no longer lists
+        for (String id : prefs.getStringSet(PREF_CHANNEL_IDS, Collections.<String>emptySet())) {
+            if (!channelConfig.channels.containsKey(id)) {
+                notificationManager.deleteNotificationChannel(id);
+            }
+        }
+
+        prefs.edit()
+            .putString(PREF_REGISTERED_FOR, registrationKey)
+            .putStringSet(PREF_CHANNEL_IDS, new HashSet<>(channelConfig.channels.keySet()))
+            .apply();
+        Log.d(TAG, "📢 Registered " + channels.size() + " notification channels: " + channelConfig.channels.keySet());
+    }
+
+    /**
+     * Channel for a message, falls back to the default channel for unknown or missing IDs
+     */
+    public static String resolveChannelId(Context context, Map<String, String> data) {
+        Config channelConfig = config(context);
+        String requested = data != null ? data.get("channelId") : null;
+        if ((requested == null || requested.isEmpty()) && data != null) {
+            requested = data.get("channel");
+        }
+        if (requested != null && channelConfig.channels.containsKey(requested)) {
+            return requested;
+        }
+        if (requested != null && !requested.isEmpty()) {
+            Log.w(TAG, "Unknown notification channel " + requested + ", using " + channelConfig.defaultChannel);
+        }
+        return channelConfig.defaultChannel;
+    }
+
+    /**
+     * Notification priority matching the channel importance, used before Android 8.0
+     */
+    public static int priorityFor(Context context, String channelId) {
+        ChannelSpec spec = config(context).channels.get(channelId);
+        int importance = spec != null ? spec.importance : NotificationManager.IMPORTANCE_HIGH;
+        if (importance >= NotificationManager.IMPORTANCE_HIGH) {
+            return NotificationCompat.PRIORITY_HIGH;
+        } else if (importance == NotificationManager.IMPORTANCE_DEFAULT) {
+            return NotificationCompat.PRIORITY_DEFAULT;
+        } else if (importance == NotificationManager.IMPORTANCE_LOW) {
+            return NotificationCompat.PRIORITY_LOW;
+        }
+        return NotificationCompat.PRIORITY_MIN;
+    }
+
+    /**
+     * Lowest-importance channel, for status notifications the user does not need to notice
+     */
+    public static String quietestChannelId(Context context) {
+        ChannelSpec quietest = null;
+        for (ChannelSpec spec : config(context).channels.values()) {
+            if (quietest == null || spec.importance < quietest.importance) {
+                quietest = spec;
+            }
+        }
+        return quietest.id;
+    }
+
+    private static synchronized Config config(Context context) {
+        if (config == null) {
+            config = loadConfig(context.getApplicationContext());
+        }
+        return config;
+    }
+
+    private static Config loadConfig(Context context) {
+        Config loaded = new Config();
+        String json = null;
+        try (InputStream in = context.getResources().openRawResource(R.raw.notification_channels)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            json = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+
+            JSONObject root = new JSONObject(json);
+            JSONArray channels = root.getJSONArray("channels");
+            for (int i = 0; i < channels.length(); i++) {
+                ChannelSpec spec = ChannelSpec.fromJson(channels.getJSONObject(i));
+                loaded.channels.put(spec.id, spec);
+            }
+            loaded.defaultChannel = root.optString("defaultChannel", FALLBACK_CHANNEL);
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Invalid notification channel configuration, using the default channel: " + e.getMessage());
+            loaded.channels.clear();
+        }
+
+        if (loaded.channels.isEmpty()) {
+            ChannelSpec fallback = new ChannelSpec();
+            fallback.id = FALLBACK_CHANNEL;
+            fallback.name = "Default Channel";
+            fallback.description = "Default notification channel";
+            loaded.channels.put(fallback.id, fallback);
+        }
+        if (!loaded.channels.containsKey(loaded.defaultChannel)) {
+            loaded.defaultChannel = loaded.channels.keySet().iterator().next();
+        }
+        loaded.hash = json != null ? Integer.toHexString(json.hashCode()) : "fallback";
+        return loaded;
+    }
+
+    private static long appVersionCode(Context context) {
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? packageInfo.getLongVersionCode() : packageInfo.versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Own package is always installed
+            return 0;
+        }
+    }
+
+    private static class Config {
+        final Map<String, ChannelSpec> channels = new LinkedHashMap<>();
+        String defaultChannel = FALLBACK_CHANNEL;
+        String hash;
+    }
+
+    private static class ChannelSpec {
+        String id;
+        String name;
+        String description;
+        int importance = NotificationManager.IMPORTANCE_HIGH;
+        boolean vibration = true;
+        boolean sound = true;
+        boolean showBadge = true;
+
+        static ChannelSpec fromJson(JSONObject json) throws JSONException {
+            ChannelSpec spec = new ChannelSpec();
+            spec.id = json.getString("id");
+            spec.name = json.optString("name", spec.id);
+            spec.description = json.optString("description", "");
+            spec.importance = importanceOf(json.optString("importance", "high"));
+            boolean audible = spec.importance >= NotificationManager.IMPORTANCE_DEFAULT;
+            spec.vibration = json.optBoolean("vibration", audible);
+            spec.sound = json.optBoolean("sound", audible);
+            spec.showBadge = json.optBoolean("showBadge", true);
+            return spec;
+        }
+
+        private static int importanceOf(String importance) {
+            switch (importance) {
+                case "min":
+                    return NotificationManager.IMPORTANCE_MIN;
+                case "low":
+                    return NotificationManager.IMPORTANCE_LOW;
+                case "default":
+                    return NotificationManager.IMPORTANCE_DEFAULT;
+                default:
+                    return NotificationManager.IMPORTANCE_HIGH;
+            }
+        }
+    }
+}
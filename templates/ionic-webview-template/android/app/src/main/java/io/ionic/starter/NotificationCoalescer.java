@@ -0,0 +1,379 @@
+package io.ionic.starter;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Folds bursts of push messages into grouped notifications. The first message of a thread is
+ * shown immediately, messages arriving within the coalescing window become a single InboxStyle
+ * update under a stable per-thread ID, and every post is charged against a token bucket that
+ * stays below Android's per-app enqueue rate limit, so bursts are delayed instead of dropped.
+ * Every delayed flush is backed by a NotificationFlushWorker, so it still happens when the
+ * process is frozen or killed before the handler gets to it.
+ */
+public class NotificationCoalescer {
+    private static final String TAG = "NotificationCoalescer";
+    private static final String GROUP_KEY = "ez_push_group";
+    private static final String DEFAULT_THREAD = "default";
+    private static final String OVERFLOW_THREAD = "more";
+    private static final long COALESCE_WINDOW_MS = 1500;
+    private static final int MAX_LINES_PER_THREAD = 6;
+    // Android keeps up to 50 notifications per app, leave room for the summary and other posts
+    private static final int MAX_THREADS = 20;
+    // NotificationManagerService drops updates above ~5 posts per second per package
+    private static final double POSTS_PER_SECOND = 4;
+    private static final int BURST_POSTS = 4;
+
+    private static NotificationCoalescer instance;
+
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final Handler handler;
+    private final int summaryId;
+
+    // Only touched on the coalescer thread
+    private final LinkedHashMap<String, ThreadState> threads = new LinkedHashMap<>(16, 0.75f, true);
+    private double budget = BURST_POSTS;
+    private long budgetUpdatedAt = SystemClock.elapsedRealtime();
+    private long postedCount = 0;
+    private long coalescedCount = 0;
+    private long deferredCount = 0;
+
+    private NotificationCoalescer(Context context) {
+        this.context = context.getApplicationContext();
+        this.notificationManager = (NotificationManager) this.context.getSystemService(Context.NOTIFICATION_SERVICE);
+        HandlerThread thread = new HandlerThread("notification-coalescer");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+        this.summaryId = notificationIdFor("__summary__");
+    }
+
+    public static synchronized NotificationCoalescer getInstance(Context context) {
+        if (instance == null) {
+            instance = new NotificationCoalescer(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue a message for display, messages with the same "threadId" (or "group") data key share a notification
+     */
+    public void enqueue(Message message) {
+        handler.post(() -> {
+            ThreadState thread = threadFor(message.threadKey);
+            thread.messages.addFirst(message);
+            // Only the newest message's image is shown, don't hold on to the older bitmaps
+            for (Message older : thread.messages) {
+                if (older != message) {
+                    older.image = null;
+                }
+            }
+            while (thread.messages.size() > MAX_LINES_PER_THREAD) {
+                thread.messages.removeLast();
+            }
+            thread.total++;
+            thread.unposted++;
+
+            if (thread.flushScheduled) {
+                coalescedCount++;
+                // Keep the backing work's copy of the thread current
+                scheduleFlushWork(thread, Math.max(0, thread.flushAt - SystemClock.elapsedRealtime()));
+                return;
+            }
+            long sinceLastPost = SystemClock.elapsedRealtime() - thread.lastPostedAt;
+            if (sinceLastPost >= COALESCE_WINDOW_MS) {
+                flush(thread);
+            } else {
+                scheduleFlush(thread, COALESCE_WINDOW_MS - sinceLastPost);
+            }
+        });
+    }
+
+    public static class Message {
+        final String threadKey;
+        final String title;
+        final String body;
+        final String channelId;
+        final Map<String, String> data;
+        Bitmap image;
+
+        public Message(String title, String body, String channelId, Map<String, String> data) {
+            this(title, body, channelId, data, null);
+        }
+
+        public Message(String title, String body, String channelId, Map<String, String> data, Bitmap image) {
+            this.title = title;
+            this.body = body;
+            this.channelId = channelId;
+            this.data = data != null ? new HashMap<>(data) : new HashMap<String, String>();
+            String key = this.data.get("threadId");
+            if (key == null || key.isEmpty()) {
+                key = this.data.get("group");
+            }
+            this.threadKey = key == null || key.isEmpty() ? DEFAULT_THREAD : key;
+            this.image = image;
+        }
+    }
+
+    private ThreadState threadFor(String key) {
+        ThreadState thread = threads.get(key);
+        if (thread == null && threads.size() >= MAX_THREADS) {
+            Log.d(TAG, "Too many notification threads, folding " + key + " into " + OVERFLOW_THREAD);
+            key = OVERFLOW_THREAD;
+            thread = threads.get(key);
+        }
+        if (thread == null) {
+            thread = new ThreadState(key, notificationIdFor(key));
+            threads.put(key, thread);
+        }
+        return thread;
+    }
+
+    private void scheduleFlush(ThreadState thread, long delayMs) {
+        thread.flushScheduled = true;
+        thread.flushAt = SystemClock.elapsedRealtime() + delayMs;
+        handler.postDelayed(() -> flushIfDue(thread), delayMs);
+        scheduleFlushWork(thread, delayMs);
+    }
+
+    private void scheduleFlushWork(ThreadState thread, long delayMs) {
+        NotificationFlushWorker.schedule(context, thread.key, delayMs, thread.total, thread.messages);
+    }
+
+    // Runnables of flushes that were rescheduled or already done by the worker are ignored
+    private void flushIfDue(ThreadState thread) {
+        if (thread.flushScheduled && SystemClock.elapsedRealtime() >= thread.flushAt) {
+            NotificationFlushWorker.cancel(context, thread.key);
+            flush(thread);
+        }
+    }
+
+    /**
+     * Run a deferred flush from NotificationFlushWorker and wait for it. When the process was
+     * restarted since the flush was scheduled, the thread is rebuilt from the saved messages.
+     * Returns false when the flush did not finish within timeoutMs.
+     */
+    boolean flushDeferred(String threadKey, int total, List<Message> saved, long timeoutMs) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        handler.post(() -> {
+            try {
+                ThreadState thread = threads.get(threadKey);
+                if (thread == null && !saved.isEmpty()) {
+                    thread = threadFor(threadKey);
+                    // Saved newest first, like ThreadState.messages
+                    for (Message message : saved) {
+                        thread.messages.addLast(message);
+                    }
+                    while (thread.messages.size() > MAX_LINES_PER_THREAD) {
+                        thread.messages.removeLast();
+                    }
+                    thread.total += Math.max(total, saved.size());
+                    thread.unposted += saved.size();
+                    flush(thread);
+                } else if (thread != null && thread.flushScheduled && SystemClock.elapsedRealtime() >= thread.flushAt) {
+                    flush(thread);
+                }
+            } finally {
+                done.countDown();
+            }
+        });
+        return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(ThreadState thread) {
+        thread.flushScheduled = false;
+        Set<Integer> activeIds = activeNotificationIds();
+
+        // The user dismissed or opened the thread since the last post, start it over
+        if (thread.lastPostedAt > 0 && !activeIds.contains(thread.id)) {
+            while (thread.messages.size() > Math.max(thread.unposted, 1)) {
+                thread.messages.removeLast();
+            }
+            thread.total = thread.unposted;
+        }
+
+        List<ThreadState> visible = new ArrayList<>();
+        for (ThreadState other : threads.values()) {
+            if (other == thread || activeIds.contains(other.id)) {
+                visible.add(other);
+            }
+        }
+        boolean withSummary = visible.size() > 1;
+        int posts = withSummary ? 2 : 1;
+
+        if (!takeBudget(posts)) {
+            long waitMs = (long) Math.ceil((posts - budget) / POSTS_PER_SECOND * 1000);
+            deferredCount++;
+            Log.d(TAG, "⏳ Post budget exhausted, delaying thread " + thread.key + " by " + waitMs + " ms");
+            scheduleFlush(thread, waitMs);
+            return;
+        }
+
+        notificationManager.notify(thread.id, buildThreadNotification(thread));
+        if (withSummary) {
+            notificationManager.notify(summaryId, buildSummaryNotification(visible));
+        }
+        thread.lastPostedAt = SystemClock.elapsedRealtime();
+        thread.unposted = 0;
+        postedCount += posts;
+        Log.d(TAG, "📱 Posted thread " + thread.key + " (" + thread.total + " messages) - posted: " + postedCount
+            + ", coalesced: " + coalescedCount + ", deferred: " + deferredCount);
+    }
+
+    private Notification buildThreadNotification(ThreadState thread) {
+        Message latest = thread.messages.peekFirst();
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, latest.channelId)
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .setContentTitle(latest.title)
+            .setContentText(latest.body)
+            .setAutoCancel(true)
+            .setOnlyAlertOnce(true)
+            .setGroup(GROUP_KEY)
+            .setContentIntent(contentIntent(thread.id, latest.data))
+            .setPriority(NotificationChannelRegistry.priorityFor(context, latest.channelId));
+
+        if (thread.total > 1) {
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (Message message : thread.messages) {
+                style.addLine(lineFor(message));
+            }
+            if (thread.total > thread.messages.size()) {
+                style.setSummaryText("+" + (thread.total - thread.messages.size()) + " more");
+            }
+            builder.setStyle(style)
+                .setNumber(thread.total)
+                .setContentText(thread.total + " new messages");
+            if (latest.image != null) {
+                builder.setLargeIcon(latest.image);
+            }
+        } else if (latest.image != null) {
+            // Thumbnail while collapsed, full-width picture when expanded
+            builder.setLargeIcon(latest.image)
+                .setStyle(new NotificationCompat.BigPictureStyle()
+                    .bigPicture(latest.image)
+                    .bigLargeIcon((Bitmap) null));
+        }
+        return builder.build();
+    }
+
+    private Notification buildSummaryNotification(List<ThreadState> visible) {
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        int total = 0;
+        // Most recently updated thread first
+        List<ThreadState> ordered = new ArrayList<>(visible);
+        Collections.reverse(ordered);
+        for (ThreadState thread : ordered) {
+            style.addLine(lineFor(thread.messages.peekFirst()));
+            total += thread.total;
+        }
+        style.setSummaryText(total + " new messages");
+
+        Message latest = ordered.get(0).messages.peekFirst();
+        return new NotificationCompat.Builder(context, latest.channelId)
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .setContentTitle(context.getString(R.string.app_name))
+            .setContentText(total + " new messages")
+            .setStyle(style)
+            .setNumber(total)
+            .setAutoCancel(true)
+            .setGroup(GROUP_KEY)
+            .setGroupSummary(true)
+            .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN)
+            .setContentIntent(contentIntent(summaryId, new HashMap<String, String>()))
+            .build();
+    }
+
+    private PendingIntent contentIntent(int requestCode, Map<String, String> data) {
+        // Create intent for app launch with notification data
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        for (Map.Entry<String, String> extra : data.entrySet()) {
+            intent.putExtra(extra.getKey(), extra.getValue());
+        }
+        // One request code per thread so each notification keeps the extras of its latest message
+        return PendingIntent.getActivity(context, requestCode, intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private boolean takeBudget(int posts) {
+        long now = SystemClock.elapsedRealtime();
+        budget = Math.min(BURST_POSTS, budget + (now - budgetUpdatedAt) * POSTS_PER_SECOND / 1000.0);
+        budgetUpdatedAt = now;
+        if (budget < posts) {
+            return false;
+        }
+        budget -= posts;
+        return true;
+    }
+
+    private Set<Integer> activeNotificationIds() {
+        Set<Integer> ids = new HashSet<>();
+        try {
+            for (StatusBarNotification notification : notificationManager.getActiveNotifications()) {
+                ids.add(notification.getId());
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read active notifications: " + e.getMessage());
+        }
+        // Forget threads that are no longer on screen and have nothing pending
+        Iterator<ThreadState> iterator = threads.values().iterator();
+        while (iterator.hasNext()) {
+            ThreadState thread = iterator.next();
+            if (!thread.flushScheduled && thread.unposted == 0 && !ids.contains(thread.id)) {
+                iterator.remove();
+            }
+        }
+        return ids;
+    }
+
+    private static CharSequence lineFor(Message message) {
+        if (message.title == null || message.title.isEmpty()) {
+            return message.body;
+        }
+        return message.body == null || message.body.isEmpty() ? message.title : message.title + ": " + message.body;
+    }
+
+    // String.hashCode is specified, so IDs stay stable across process restarts
+    private static int notificationIdFor(String threadKey) {
+        return ("ez_thread:" + threadKey).hashCode();
+    }
+
+    private static class ThreadState {
+        final String key;
+        final int id;
+        final ArrayDeque<Message> messages = new ArrayDeque<>();
+        int total = 0;
+        int unposted = 0;
+        long lastPostedAt = 0;
+        boolean flushScheduled = false;
+        long flushAt = 0;
+
+        ThreadState(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+}
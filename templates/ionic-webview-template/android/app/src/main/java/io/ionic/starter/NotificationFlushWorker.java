@@ -0,0 +1,124 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deferred flush of a NotificationCoalescer thread. The coalescer's handler usually gets there
+ * first; this work is what still posts the notification when the process was frozen or killed in
+ * the meantime. It carries the thread's pending messages (text only, images are not kept), so a
+ * new process can rebuild the thread.
+ */
+public class NotificationFlushWorker extends Worker {
+    private static final String TAG = "NotificationFlush";
+    private static final String UNIQUE_WORK_PREFIX = "notification_flush:";
+    private static final String KEY_THREAD = "thread";
+    private static final String KEY_TOTAL = "total";
+    private static final String KEY_MESSAGES = "messages";
+    private static final long FLUSH_WAIT_MS = 10000;
+
+    public NotificationFlushWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        Data input = getInputData();
+        String threadKey = input.getString(KEY_THREAD);
+        if (threadKey == null) {
+            return Result.success();
+        }
+        List<NotificationCoalescer.Message> saved = readMessages(input.getString(KEY_MESSAGES));
+        try {
+            if (!NotificationCoalescer.getInstance(getApplicationContext())
+                    .flushDeferred(threadKey, input.getInt(KEY_TOTAL, saved.size()), saved, FLUSH_WAIT_MS)) {
+                Log.w(TAG, "⚠️ Flush of thread " + threadKey + " did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Result.success();
+    }
+
+    /**
+     * Replace the thread's pending flush with one due in delayMs
+     */
+    static void schedule(Context context, String threadKey, long delayMs, int total, Collection<NotificationCoalescer.Message> messages) {
+        Data input;
+        try {
+            input = new Data.Builder()
+                .putString(KEY_THREAD, threadKey)
+                .putInt(KEY_TOTAL, total)
+                .putString(KEY_MESSAGES, writeMessages(messages))
+                .build();
+        } catch (IllegalStateException | JSONException e) {
+            // Over Data's 10 KB limit: the flush still runs, a new process just has nothing to rebuild
+            input = new Data.Builder().putString(KEY_THREAD, threadKey).build();
+        }
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(NotificationFlushWorker.class)
+            .setInputData(input)
+            .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+            .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK_PREFIX + threadKey, ExistingWorkPolicy.REPLACE, request);
+    }
+
+    static void cancel(Context context, String threadKey) {
+        WorkManager.getInstance(context).cancelUniqueWork(UNIQUE_WORK_PREFIX + threadKey);
+    }
+
+    private static String writeMessages(Collection<NotificationCoalescer.Message> messages) throws JSONException {
+        JSONArray json = new JSONArray();
+        for (NotificationCoalescer.Message message : messages) {
+            json.put(new JSONObject()
+                .put("title", message.title)
+                .put("body", message.body)
+                .put("channelId", message.channelId)
+                .put("data", new JSONObject(message.data)));
+        }
+        return json.toString();
+    }
+
+    private static List<NotificationCoalescer.Message> readMessages(String json) {
+        List<NotificationCoalescer.Message> messages = new ArrayList<>();
+        if (json == null) {
+            return messages;
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject message = array.getJSONObject(i);
+                Map<String, String> data = new HashMap<>();
+                JSONObject dataJson = message.optJSONObject("data");
+                if (dataJson != null) {
+                    Iterator<String> keys = dataJson.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        data.put(key, dataJson.getString(key));
+                    }
+                }
+                messages.add(new NotificationCoalescer.Message(
+                    message.optString("title", null), message.optString("body", null), message.getString("channelId"), data));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not read saved messages: " + e.getMessage());
+        }
+        return messages;
+    }
+}
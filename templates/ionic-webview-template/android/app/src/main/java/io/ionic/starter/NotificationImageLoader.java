@@ -0,0 +1,261 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads notification images for BigPictureStyle. Downloads are bounded by the time FCM gives
+ * onMessageReceived, decoded bitmaps are downsampled to the size the notification shade renders,
+ * and both the encoded files (disk) and the decoded bitmaps (memory) are kept in small LRU caches
+ * so a campaign image is fetched once rather than for every message that carries it.
+ */
+public final class NotificationImageLoader {
+    private static final String TAG = "NotificationImages";
+    private static final String CACHE_DIR = "notification_images";
+    // Same budget the FCM SDK uses for the images it displays itself
+    private static final long FETCH_BUDGET_MS = 5000;
+    private static final int MAX_DOWNLOAD_BYTES = 4 * 1024 * 1024;
+    // BigPictureStyle center-crops the picture to about 2:1 in a layout at most 450dp wide
+    private static final int TARGET_WIDTH_DP = 450;
+    private static final int TARGET_HEIGHT_DP = 225;
+
+    private static NotificationImageLoader instance;
+
+    private final File directory;
+    private final long maxDiskBytes;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final int targetWidth;
+    private final int targetHeight;
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong downloadCount = new AtomicLong();
+
+    private NotificationImageLoader(File directory, long maxDiskBytes, int maxMemoryBytes, DisplayMetrics metrics) {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        this.targetWidth = Math.min(metrics.widthPixels, Math.round(TARGET_WIDTH_DP * metrics.density));
+        this.targetHeight = Math.round(targetWidth * (float) TARGET_HEIGHT_DP / TARGET_WIDTH_DP);
+    }
+
+    /**
+     * Process-wide loader, sized from res/values/config.xml
+     */
+    public static synchronized NotificationImageLoader getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            Resources resources = appContext.getResources();
+            long memoryBytes = Math.min(
+                resources.getInteger(R.integer.notification_image_memory_cache_mb) * 1024L * 1024L,
+                Runtime.getRuntime().maxMemory() / 16);
+            instance = new NotificationImageLoader(
+                new File(appContext.getCacheDir(), CACHE_DIR),
+                resources.getInteger(R.integer.notification_image_disk_cache_mb) * 1024L * 1024L,
+                (int) memoryBytes,
+                resources.getDisplayMetrics());
+        }
+        return instance;
+    }
+
+    /**
+     * Whether load() can return without touching the network
+     */
+    public boolean isCached(String url) {
+        return url != null && (memoryCache.get(url) != null || new File(directory, sha1(url)).exists());
+    }
+
+    /**
+     * Blocking load for onMessageReceived, returns null when the image is unavailable or too slow
+     */
+    public Bitmap load(String url) {
+        if (url == null || !(url.startsWith("https://") || url.startsWith("http://"))) {
+            return null;
+        }
+
+        Bitmap bitmap = memoryCache.get(url);
+        if (bitmap != null) {
+            memoryHitCount.incrementAndGet();
+            Log.d(TAG, "🖼️ Notification image from memory: " + url);
+            return bitmap;
+        }
+
+        long startedAt = SystemClock.elapsedRealtime();
+        File file = new File(directory, sha1(url));
+        try {
+            if (file.exists()) {
+                diskHitCount.incrementAndGet();
+                file.setLastModified(System.currentTimeMillis());
+            } else {
+                download(url, file, startedAt + FETCH_BUDGET_MS);
+                downloadCount.incrementAndGet();
+                trimDiskCache();
+            }
+
+            bitmap = decodeSampled(file);
+            if (bitmap == null) {
+                Log.w(TAG, "Notification image could not be decoded: " + url);
+                file.delete();
+                return null;
+            }
+            memoryCache.put(url, bitmap);
+            Log.d(TAG, "🖼️ Notification image " + bitmap.getWidth() + "x" + bitmap.getHeight() + " loaded in "
+                + (SystemClock.elapsedRealtime() - startedAt) + " ms - memory hits: " + memoryHitCount.get()
+                + ", disk hits: " + diskHitCount.get() + ", downloads: " + downloadCount.get());
+            return bitmap;
+        } catch (IOException | OutOfMemoryError e) {
+            Log.w(TAG, "⚠️ Notification image unavailable, showing text only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void download(String url, File file, long deadline) throws IOException {
+        int timeout = (int) Math.max(1, deadline - SystemClock.elapsedRealtime());
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setInstanceFollowRedirects(true);
+
+        directory.mkdirs();
+        // Unique per download, concurrent loads of the same URL must not write into each other
+        File tmpFile = File.createTempFile(file.getName() + ".", ".tmp", directory);
+        try {
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            if (connection.getContentLength() > MAX_DOWNLOAD_BYTES) {
+                throw new IOException("image larger than " + MAX_DOWNLOAD_BYTES + " bytes");
+            }
+
+            try (InputStream in = connection.getInputStream(); OutputStream out = new FileOutputStream(tmpFile)) {
+                byte[] buffer = new byte[16 * 1024];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    total += read;
+                    if (total > MAX_DOWNLOAD_BYTES) {
+                        throw new IOException("image larger than " + MAX_DOWNLOAD_BYTES + " bytes");
+                    }
+                    if (SystemClock.elapsedRealtime() > deadline) {
+                        throw new IOException("download exceeded " + FETCH_BUDGET_MS + " ms");
+                    }
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("could not store " + file.getName());
+            }
+        } finally {
+            tmpFile.delete();
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Decode at the smallest power-of-two sample that still covers the target, then scale the
+     * rest of the way so the bitmap parcelled to the system is no larger than the shade shows
+     */
+    private Bitmap decodeSampled(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (sampled == null) {
+            return null;
+        }
+
+        float scale = Math.max((float) targetWidth / sampled.getWidth(), (float) targetHeight / sampled.getHeight());
+        if (scale >= 1f) {
+            return sampled;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled,
+            Math.max(1, Math.round(sampled.getWidth() * scale)),
+            Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    private synchronized void trimDiskCache() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+
+        // Least recently used first, hits refresh lastModified
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+}
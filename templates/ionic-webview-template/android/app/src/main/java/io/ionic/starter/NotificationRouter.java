@@ -0,0 +1,140 @@
+package io.ionic.starter;
+
+import android.util.Log;
+import android.webkit.WebView;
+import com.getcapacitor.Bridge;
+import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Routes notification taps into the page that is already running instead of reloading it.
+ * Same-origin targets are dispatched to the page as a cancelable "ezNotificationNavigate"
+ * window event; sites that do not handle the event can opt into history.pushState with
+ * {@code <meta name="ez-navigation" content="pushstate">}. Anything else falls back to loadUrl.
+ */
+public class NotificationRouter {
+    private static final String TAG = "NotificationRouter";
+
+    public static final String NAVIGATION_EVENT = "ezNotificationNavigate";
+
+    // Returns how the page handled the navigation, or null when it needs a full load
+    private static final String SOFT_NAVIGATION_SCRIPT =
+        "(function (url) {" +
+        "  var target = new URL(url, location.href);" +
+        "  if (target.origin !== location.origin) return null;" +
+        "  var detail = { url: target.href, path: target.pathname + target.search + target.hash, source: 'notification' };" +
+        "  if (!window.dispatchEvent(new CustomEvent('" + NAVIGATION_EVENT + "', { detail: detail, cancelable: true }))) return 'event';" +
+        "  if (target.pathname === location.pathname && target.search === location.search) {" +
+        "    if (target.hash && target.hash !== location.hash) location.hash = target.hash;" +
+        "    return 'same-document';" +
+        "  }" +
+        "  var meta = document.querySelector('meta[name=\"ez-navigation\"]');" +
+        "  if (meta && meta.content === 'pushstate') {" +
+        "    history.pushState(null, '', detail.path);" +
+        "    window.dispatchEvent(new PopStateEvent('popstate', { state: null }));" +
+        "    return 'pushstate';" +
+        "  }" +
+        "  return null;" +
+        "})(%s)";
+
+    private final Bridge bridge;
+    private final String websiteUrl;
+
+    public NotificationRouter(Bridge bridge, String websiteUrl) {
+        this.bridge = bridge;
+        this.websiteUrl = websiteUrl;
+    }
+
+    /**
+     * Navigate the WebView to a notification target, softly when the page is already on that site
+     */
+    public void navigate(String url) {
+        WebView webView = bridge.getWebView();
+        if (webView == null) {
+            Log.e(TAG, "❌ WebView not available for navigation");
+            return;
+        }
+
+        bridge.executeOnMainThread(() -> {
+            // A page that is still loading may not have its listeners attached yet
+            if (!isSameOrigin(webView.getUrl(), url) || webView.getProgress() < 100) {
+                loadUrl(webView, url);
+                return;
+            }
+
+            bridge.eval(String.format(SOFT_NAVIGATION_SCRIPT, JSONObject.quote(url)), result -> {
+                String mode = result == null ? "null" : result.replace("\"", "");
+                if ("null".equals(mode) || mode.isEmpty()) {
+                    loadUrl(webView, url);
+                } else {
+                    Log.d(TAG, "✨ Soft navigation (" + mode + ") to: " + url);
+                }
+            });
+        });
+    }
+
+    /**
+     * Map a non-HTTP deep link such as "/offers/42", "offers/42" or "myapp://offers/42" onto
+     * the website, returns null when there is no website to resolve it against
+     */
+    public String resolveDeepLink(String deepLink, String currentUrl) {
+        if (deepLink.startsWith("http://") || deepLink.startsWith("https://")) {
+            return deepLink;
+        }
+
+        String path = deepLink;
+        int schemeEnd = deepLink.indexOf("://");
+        if (schemeEnd > 0) {
+            // The custom scheme only identifies the app, its host and path form the route
+            path = deepLink.substring(schemeEnd + 3);
+        }
+        if (!path.startsWith("/")) {
+            path = "/" + path;
+        }
+
+        String base = isHttpUrl(websiteUrl) ? websiteUrl : currentUrl;
+        if (!isHttpUrl(base)) {
+            return null;
+        }
+        try {
+            return new URL(new URL(base), path).toString();
+        } catch (MalformedURLException e) {
+            Log.w(TAG, "Could not map deep link " + deepLink + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void loadUrl(WebView webView, String url) {
+        try {
+            webView.loadUrl(url);
+            Log.d(TAG, "✅ Loaded: " + url);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to navigate in webview: " + e.getMessage());
+        }
+    }
+
+    private static boolean isSameOrigin(String a, String b) {
+        if (!isHttpUrl(a) || !isHttpUrl(b)) {
+            return false;
+        }
+        try {
+            URL first = new URL(a);
+            URL second = new URL(b);
+            return first.getProtocol().equals(second.getProtocol())
+                && first.getHost().equalsIgnoreCase(second.getHost())
+                && effectivePort(first) == effectivePort(second);
+        } catch (MalformedURLException e) {
+            return false;
+        }
+    }
+
+    private static int effectivePort(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    private static boolean isHttpUrl(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+}
@@ -0,0 +1,128 @@
+package io.ionic.starter;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.work.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-message stage timings for the push pipeline. Each stage is the time since the previous
+ * one; the timings travel with the message into PushMessageWorker, and a running count, mean
+ * and max per stage is kept for the process so slow stages show up in logcat.
+ */
+final class PipelineTimings {
+    private static final String TAG = "PushPipeline";
+    private static final String KEY_STARTED_AT = "timings.startedAt";
+    private static final String KEY_LAST_STAGE_AT = "timings.lastStageAt";
+    private static final String KEY_STAGES = "timings.stages";
+
+    // stage -> {count, total ms, max ms}
+    private static final Map<String, long[]> aggregate = new LinkedHashMap<>();
+
+    private final String messageId;
+    private final long startedAt;
+    private long lastStageAt;
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    PipelineTimings(String messageId, long startedAt) {
+        this.messageId = messageId;
+        this.startedAt = startedAt;
+        this.lastStageAt = startedAt;
+    }
+
+    /**
+     * Close the current stage, measured from the end of the previous one
+     */
+    void stage(String name) {
+        long now = SystemClock.elapsedRealtime();
+        stages.put(name, now - lastStageAt);
+        lastStageAt = now;
+    }
+
+    /**
+     * Log the message's stages and fold them into the process-wide statistics
+     */
+    void finish(String outcome) {
+        long total = SystemClock.elapsedRealtime() - startedAt;
+        StringBuilder line = new StringBuilder("⏱️ Push ").append(messageId).append(" ").append(outcome).append(":");
+        synchronized (aggregate) {
+            for (Map.Entry<String, Long> entry : stages.entrySet()) {
+                line.append(" ").append(entry.getKey()).append("=").append(entry.getValue()).append("ms");
+                record(entry.getKey(), entry.getValue());
+            }
+            record("total", total);
+        }
+        line.append(" total=").append(total).append("ms");
+        Log.d(TAG, line.toString());
+        if (count("total") % 10 == 0) {
+            Log.d(TAG, "📊 Push pipeline stages - " + summary());
+        }
+    }
+
+    void writeTo(Data.Builder builder) {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Long> entry : stages.entrySet()) {
+            encoded.append(entry.getKey()).append(':').append(entry.getValue()).append(';');
+        }
+        builder.putLong(KEY_STARTED_AT, startedAt)
+            .putLong(KEY_LAST_STAGE_AT, lastStageAt)
+            .putString(KEY_STAGES, encoded.toString());
+    }
+
+    static PipelineTimings readFrom(Data input, String messageId) {
+        long now = SystemClock.elapsedRealtime();
+        long startedAt = input.getLong(KEY_STARTED_AT, now);
+        if (startedAt > now) {
+            // Work that survived a reboot, the elapsed-realtime clock started over
+            startedAt = now;
+        }
+        PipelineTimings timings = new PipelineTimings(messageId, startedAt);
+        timings.lastStageAt = Math.min(Math.max(input.getLong(KEY_LAST_STAGE_AT, now), startedAt), now);
+        String encoded = input.getString(KEY_STAGES);
+        if (encoded != null) {
+            for (String stage : encoded.split(";")) {
+                int separator = stage.indexOf(':');
+                if (separator > 0) {
+                    timings.stages.put(stage.substring(0, separator), Long.parseLong(stage.substring(separator + 1)));
+                }
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * Count, mean and max per stage since the process started
+     */
+    static String summary() {
+        StringBuilder summary = new StringBuilder();
+        synchronized (aggregate) {
+            for (Map.Entry<String, long[]> entry : aggregate.entrySet()) {
+                long[] values = entry.getValue();
+                summary.append(entry.getKey()).append(": n=").append(values[0])
+                    .append(" mean=").append(values[1] / values[0]).append("ms")
+                    .append(" max=").append(values[2]).append("ms; ");
+            }
+        }
+        return summary.toString();
+    }
+
+    private static long count(String stage) {
+        synchronized (aggregate) {
+            long[] values = aggregate.get(stage);
+            return values != null ? values[0] : 0;
+        }
+    }
+
+    private static void record(String stage, long durationMs) {
+        long[] values = aggregate.get(stage);
+        if (values == null) {
+            values = new long[3];
+            aggregate.put(stage, values);
+        }
+        values[0]++;
+        values[1] += durationMs;
+        values[2] = Math.max(values[2], durationMs);
+    }
+}
@@ -0,0 +1,85 @@
+package io.ionic.starter;
+
+import android.app.Notification;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+import androidx.work.Data;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Background half of the push pipeline: downloads the notification image and posts the
+ * notification, then prefetches the page the notification opens
+ */
+public class PushMessageWorker extends Worker {
+    private static final String TAG = "PushMessageWorker";
+    static final String KEY_POST = "post";
+    static final String KEY_PREFETCH = "prefetch";
+    private static final long PREFETCH_WAIT_SECONDS = 30;
+    private static final int FOREGROUND_NOTIFICATION_ID = 0x455a01;
+
+    public PushMessageWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        Data input = getInputData();
+        PushPayload payload = PushPayload.readFrom(input);
+        PipelineTimings timings = PipelineTimings.readFrom(input, payload.messageId);
+        timings.stage("queue");
+
+        boolean post = input.getBoolean(KEY_POST, false);
+        if (post) {
+            // Never retried, a late duplicate is worse than a notification without its image
+            Bitmap image = NotificationImageLoader.getInstance(context).load(payload.imageUrl);
+            timings.stage("image");
+            PushPipeline.post(context, payload, image);
+            timings.stage("post");
+        }
+
+        if (input.getBoolean(KEY_PREFETCH, false)) {
+            Future<?> prefetch = WebResourceCache.getInstance(context).prefetch(payload.targetUrl);
+            if (prefetch != null) {
+                try {
+                    // Keep the job (and its wake lock) alive until the page is in the cache
+                    prefetch.get(PREFETCH_WAIT_SECONDS, TimeUnit.SECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    Log.w(TAG, "Prefetch did not complete: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            timings.stage("prefetch");
+        }
+
+        timings.finish(post ? "background" : "inline+prefetch");
+        return Result.success();
+    }
+
+    /**
+     * Expedited work runs as a foreground service before Android 12 and needs a notification
+     */
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        Context context = getApplicationContext();
+        NotificationChannelRegistry.ensureChannels(context);
+        Notification notification = new NotificationCompat.Builder(context, NotificationChannelRegistry.quietestChannelId(context))
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .setContentTitle(context.getString(R.string.app_name))
+            .setContentText("Receiving message…")
+            .setPriority(NotificationCompat.PRIORITY_MIN)
+            .setSilent(true)
+            .build();
+        return new ForegroundInfo(FOREGROUND_NOTIFICATION_ID, notification);
+    }
+}
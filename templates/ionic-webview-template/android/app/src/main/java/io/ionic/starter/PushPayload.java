@@ -0,0 +1,112 @@
+package io.ionic.starter;
+
+import androidx.work.Data;
+import com.google.firebase.messaging.RemoteMessage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A push message parsed once in onMessageReceived. Notification and data-only messages are
+ * normalised to the same fields so every pipeline stage, inline or in PushMessageWorker, works
+ * from this snapshot instead of re-reading the RemoteMessage.
+ */
+public final class PushPayload {
+    private static final String KEY_MESSAGE_ID = "messageId";
+    private static final String KEY_TITLE = "title";
+    private static final String KEY_BODY = "body";
+    private static final String KEY_IMAGE_URL = "imageUrl";
+    private static final String DATA_PREFIX = "data.";
+
+    final String messageId;
+    final String title;
+    final String body;
+    final String imageUrl;
+    final String targetUrl;
+    final Map<String, String> data;
+
+    private PushPayload(String messageId, String title, String body, String imageUrl, Map<String, String> data) {
+        this.messageId = messageId != null ? messageId : "local-" + System.currentTimeMillis();
+        this.title = title;
+        this.body = body;
+        this.imageUrl = imageUrl;
+        this.data = data;
+        this.targetUrl = resolveTargetUrl(data);
+    }
+
+    /**
+     * Notification fields win, data-only messages carry them as "title", "body" and "imageUrl"
+     */
+    public static PushPayload from(RemoteMessage remoteMessage) {
+        Map<String, String> data = new HashMap<>(remoteMessage.getData());
+        RemoteMessage.Notification notification = remoteMessage.getNotification();
+        String title = data.get(KEY_TITLE);
+        String body = data.get(KEY_BODY);
+        String imageUrl = data.get(KEY_IMAGE_URL);
+        if (notification != null) {
+            title = notification.getTitle() != null ? notification.getTitle() : title;
+            body = notification.getBody() != null ? notification.getBody() : body;
+            if (notification.getImageUrl() != null) {
+                imageUrl = notification.getImageUrl().toString();
+            }
+        }
+        return new PushPayload(remoteMessage.getMessageId(), title, body, emptyToNull(imageUrl), data);
+    }
+
+    /**
+     * Something to show, data messages without a title or body are handled silently
+     */
+    public boolean isDisplayable() {
+        return (title != null && !title.isEmpty()) || (body != null && !body.isEmpty());
+    }
+
+    /**
+     * Serialise for WorkManager, FCM caps payloads at 4 KB so this stays within Data's 10 KB limit
+     */
+    void writeTo(Data.Builder builder) {
+        builder.putString(KEY_MESSAGE_ID, messageId)
+            .putString(KEY_TITLE, title)
+            .putString(KEY_BODY, body)
+            .putString(KEY_IMAGE_URL, imageUrl);
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            builder.putString(DATA_PREFIX + entry.getKey(), entry.getValue());
+        }
+    }
+
+    static PushPayload readFrom(Data input) {
+        Map<String, String> data = new HashMap<>();
+        for (Map.Entry<String, Object> entry : input.getKeyValueMap().entrySet()) {
+            if (entry.getKey().startsWith(DATA_PREFIX) && entry.getValue() instanceof String) {
+                data.put(entry.getKey().substring(DATA_PREFIX.length()), (String) entry.getValue());
+            }
+        }
+        return new PushPayload(input.getString(KEY_MESSAGE_ID), input.getString(KEY_TITLE),
+            input.getString(KEY_BODY), input.getString(KEY_IMAGE_URL), data);
+    }
+
+    /**
+     * Same precedence as MainActivity.handleNotificationIntent
+     */
+    private static String resolveTargetUrl(Map<String, String> data) {
+        String navigationType = data.get("navigationType");
+        String targetUrl = data.get("targetUrl");
+        if ("in-app".equals(navigationType) && targetUrl != null && !targetUrl.isEmpty()) {
+            return targetUrl;
+        }
+
+        String webLink = data.get("webLink");
+        if (webLink != null && !webLink.isEmpty()) {
+            return webLink;
+        }
+
+        String deepLink = data.get("deepLink");
+        if (deepLink != null && deepLink.startsWith("http")) {
+            return deepLink;
+        }
+        return null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value != null && !value.isEmpty() ? value : null;
+    }
+}
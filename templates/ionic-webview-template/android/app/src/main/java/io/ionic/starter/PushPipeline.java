@@ -0,0 +1,107 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.ConnectivityManager;
+import android.os.Build;
+import android.util.Log;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+
+/**
+ * Routes a parsed push message. When everything the notification needs is already on the
+ * device it is posted inline; slow work (image download, target page prefetch) is handed to
+ * PushMessageWorker so onMessageReceived returns well within FCM's execution window.
+ */
+public final class PushPipeline {
+    private static final String TAG = "PushPipeline";
+    static final String WORK_TAG = "push_message";
+
+    private PushPipeline() {
+    }
+
+    public static void handle(Context context, PushPayload payload, PipelineTimings timings) {
+        if (!payload.isDisplayable()) {
+            Log.d(TAG, "📋 Data-only message handled silently: " + payload.data);
+            timings.finish("silent");
+            return;
+        }
+
+        boolean prefetch = payload.targetUrl != null && !isDataSaverEnabled(context);
+        NotificationImageLoader images = NotificationImageLoader.getInstance(context);
+        if (payload.imageUrl != null && !images.isCached(payload.imageUrl)) {
+            // Downloading would eat into FCM's window, the job posts the notification once it has the image
+            timings.stage("route");
+            enqueue(context, payload, timings, true, prefetch);
+            return;
+        }
+
+        Bitmap image = payload.imageUrl != null ? images.load(payload.imageUrl) : null;
+        timings.stage("image");
+        post(context, payload, image);
+        timings.stage("post");
+        if (prefetch) {
+            enqueue(context, payload, timings, false, true);
+        } else {
+            timings.finish("inline");
+        }
+    }
+
+    /**
+     * Post through the channel registry and the coalescer, shared by the inline and worker paths
+     */
+    static void post(Context context, PushPayload payload, Bitmap image) {
+        // No-op after the first call in this process, and after the first launch of this app version
+        NotificationChannelRegistry.ensureChannels(context);
+        String channelId = NotificationChannelRegistry.resolveChannelId(context, payload.data);
+
+        // Bursts are grouped per thread and paced below the system's post rate limit
+        NotificationCoalescer.getInstance(context).enqueue(new NotificationCoalescer.Message(
+            payload.title,
+            payload.body,
+            channelId,
+            payload.data,
+            image
+        ));
+        Log.d(TAG, "📱 Notification queued");
+    }
+
+    private static void enqueue(Context context, PushPayload payload, PipelineTimings timings,
+                                boolean post, boolean prefetch) {
+        Data.Builder input = new Data.Builder()
+            .putBoolean(PushMessageWorker.KEY_POST, post)
+            .putBoolean(PushMessageWorker.KEY_PREFETCH, prefetch);
+        payload.writeTo(input);
+        timings.writeTo(input);
+
+        OneTimeWorkRequest.Builder request = new OneTimeWorkRequest.Builder(PushMessageWorker.class)
+            .setInputData(input.build())
+            .addTag(WORK_TAG);
+        if (post) {
+            // The user is waiting on this one. No network constraint: offline, the image fails fast
+            // and the notification is posted without it. Runs as regular work once the quota is used.
+            request.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        } else {
+            // Prefetching is speculative and can wait for a connection
+            request.setConstraints(new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build());
+        }
+        WorkManager.getInstance(context).enqueue(request.build());
+        Log.d(TAG, "📤 Push " + payload.messageId + " handed to background work (post: " + post + ", prefetch: " + prefetch + ")");
+    }
+
+    // Prefetching is speculative traffic
+    private static boolean isDataSaverEnabled(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return false;
+        }
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager != null && connectivityManager.getRestrictBackgroundStatus()
+            == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+    }
+}
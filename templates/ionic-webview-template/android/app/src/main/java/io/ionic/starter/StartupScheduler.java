@@ -0,0 +1,117 @@
+package io.ionic.starter;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+import java.util.PriorityQueue;
+
+/**
+ * Queues non-critical startup work and runs it on the main thread's idle handler once the
+ * first frame of the page has been drawn. One task runs per idle pass so frames keep
+ * flowing between tasks; lower priority values run first.
+ */
+public class StartupScheduler {
+    private static final String TAG = "StartupScheduler";
+
+    public static final int PRIORITY_HIGH = 0;
+    public static final int PRIORITY_NORMAL = 10;
+    public static final int PRIORITY_LOW = 20;
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable releaseRunnable = this::release;
+    private long sequence = 0;
+    private boolean released = false;
+    private boolean idleHandlerInstalled = false;
+
+    private final MessageQueue.IdleHandler idleHandler = () -> {
+        Task task = tasks.poll();
+        if (task != null) {
+            run(task);
+        }
+        idleHandlerInstalled = !tasks.isEmpty();
+        return idleHandlerInstalled;
+    };
+
+    /**
+     * Queue a task, must be called on the main thread
+     */
+    public void schedule(String name, int priority, Runnable action) {
+        tasks.add(new Task(name, priority, sequence++, action));
+        if (released) {
+            installIdleHandler();
+        }
+    }
+
+    /**
+     * Start draining the queue, typically from the WebView's first visual-state callback
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        mainHandler.removeCallbacks(releaseRunnable);
+        Log.d(TAG, "🚦 Releasing " + tasks.size() + " deferred startup tasks");
+        installIdleHandler();
+    }
+
+    /**
+     * Safety net so deferred work still runs if the first visual state never arrives
+     */
+    public void releaseAfter(long delayMs) {
+        mainHandler.postDelayed(releaseRunnable, delayMs);
+    }
+
+    public void cancel() {
+        mainHandler.removeCallbacks(releaseRunnable);
+        tasks.clear();
+        if (idleHandlerInstalled) {
+            Looper.getMainLooper().getQueue().removeIdleHandler(idleHandler);
+            idleHandlerInstalled = false;
+        }
+    }
+
+    private void installIdleHandler() {
+        if (!idleHandlerInstalled && !tasks.isEmpty()) {
+            Looper.getMainLooper().getQueue().addIdleHandler(idleHandler);
+            idleHandlerInstalled = true;
+        }
+    }
+
+    private void run(Task task) {
+        StartupTracer.begin("deferred_" + task.name);
+        try {
+            task.action.run();
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Deferred task " + task.name + " failed: " + e.getMessage(), e);
+        } finally {
+            StartupTracer.end("deferred_" + task.name);
+        }
+        Log.d(TAG, "✅ Deferred task completed: " + task.name);
+    }
+
+    private static class Task implements Comparable<Task> {
+        final String name;
+        final int priority;
+        final long sequence;
+        final Runnable action;
+
+        Task(String name, int priority, long sequence, Runnable action) {
+            this.name = name;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.ionic.starter;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import org.json.JSONException;
+
+/**
+ * Exposes the native cold-start timings to JavaScript as the "StartupTiming" plugin
+ */
+@CapacitorPlugin(name = "StartupTiming")
+public class StartupTimingPlugin extends Plugin {
+
+    @PluginMethod
+    public void getTimings(PluginCall call) {
+        try {
+            call.resolve(new JSObject(StartupTracer.toJson().toString()));
+        } catch (JSONException e) {
+            call.reject("Failed to read startup timings", e);
+        }
+    }
+
+    /**
+     * Let the web layer record its own milestones, e.g. when the page becomes interactive
+     */
+    @PluginMethod
+    public void mark(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null || name.isEmpty()) {
+            call.reject("Milestone name is required");
+            return;
+        }
+        StartupTracer.mark("js_" + name, call.getString("detail"));
+        call.resolve();
+    }
+}
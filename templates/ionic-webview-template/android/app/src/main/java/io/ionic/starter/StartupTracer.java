@@ -0,0 +1,212 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records monotonic cold-start timings and mirrors each phase as an android.os.Trace section
+ * so startup can be inspected in Perfetto / systrace and compared between builds.
+ * Milestones are measured in milliseconds since process start.
+ */
+public final class StartupTracer {
+    private static final String TAG = "StartupTracer";
+    private static final String TRACE_PREFIX = "EZ:";
+    private static final String REPORT_DIR = "startup-reports";
+    private static final int MAX_REPORTS = 10;
+
+    public static final String PROCESS_START = "process_start";
+    public static final String ACTIVITY_CREATE = "activity_create";
+    public static final String WEBVIEW_CREATED = "webview_created";
+    public static final String BRIDGE_READY = "bridge_ready";
+    public static final String FIRST_PAGE_STARTED = "first_page_started";
+    public static final String FIRST_PAGE_FINISHED = "first_page_finished";
+    public static final String FIRST_VISUAL_STATE = "first_visual_state";
+
+    // Fallback origin for devices without Process.getStartElapsedRealtime()
+    private static final long CLASS_LOAD_ELAPSED = SystemClock.elapsedRealtime();
+
+    private static final Map<String, Long> milestones = new LinkedHashMap<>();
+    private static final Map<String, String> milestoneDetails = new HashMap<>();
+    private static final Map<String, Long> sections = new LinkedHashMap<>();
+    private static final Map<String, Long> openSections = new HashMap<>();
+    // One writer thread, so a rewrite for a late milestone never races the previous write
+    private static final ExecutorService reportWriter = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "startup-report"));
+    // Set by the first writeReport(), later milestones rewrite the same file
+    private static Context reportContext;
+    private static String reportFileName;
+
+    static {
+        milestones.put(PROCESS_START, 0L);
+    }
+
+    private StartupTracer() {
+    }
+
+    /**
+     * Start a synchronous startup phase, must be closed with end() on the same thread
+     */
+    public static synchronized void begin(String section) {
+        openSections.put(section, SystemClock.elapsedRealtime());
+        Trace.beginSection(TRACE_PREFIX + section);
+    }
+
+    public static synchronized void end(String section) {
+        Long start = openSections.remove(section);
+        if (start == null) {
+            return;
+        }
+        Trace.endSection();
+        sections.put(section, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * Record a startup milestone, only the first occurrence of each name is kept
+     */
+    public static void mark(String milestone) {
+        mark(milestone, null);
+    }
+
+    public static synchronized void mark(String milestone, String detail) {
+        if (milestones.containsKey(milestone)) {
+            return;
+        }
+        long sinceStart = SystemClock.elapsedRealtime() - processStartElapsed();
+        milestones.put(milestone, sinceStart);
+        if (detail != null) {
+            milestoneDetails.put(milestone, detail);
+        }
+
+        // Zero-length section so the milestone shows up as a marker in the trace
+        Trace.beginSection(TRACE_PREFIX + milestone);
+        Trace.endSection();
+        Log.d(TAG, "⏱️ " + milestone + " at +" + sinceStart + " ms" + (detail != null ? " (" + detail + ")" : ""));
+
+        // Milestones after the report (JS marks, mostly) are added to it
+        if (reportContext != null) {
+            reportWriter.execute(() -> writeReportFile(reportContext));
+        }
+    }
+
+    public static synchronized boolean hasMark(String milestone) {
+        return milestones.containsKey(milestone);
+    }
+
+    public static synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONObject milestonesJson = new JSONObject();
+            for (Map.Entry<String, Long> milestone : milestones.entrySet()) {
+                milestonesJson.put(milestone.getKey(), milestone.getValue().longValue());
+            }
+            JSONObject sectionsJson = new JSONObject();
+            for (Map.Entry<String, Long> section : sections.entrySet()) {
+                sectionsJson.put(section.getKey(), section.getValue().longValue());
+            }
+            json.put("milestones", milestonesJson);
+            json.put("sections", sectionsJson);
+            json.put("details", new JSONObject(milestoneDetails));
+            json.put("processStartPrecise", Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to serialize startup timings: " + e.getMessage());
+        }
+        return json;
+    }
+
+    /**
+     * Write the startup report to files/startup-reports once the first page has both been drawn
+     * and finished loading, whichever comes last; keeps the latest reports. One file per process,
+     * rewritten when later milestones arrive.
+     */
+    public static synchronized void writeReport(Context context) {
+        if (reportContext != null || !milestones.containsKey(FIRST_VISUAL_STATE) || !milestones.containsKey(FIRST_PAGE_FINISHED)) {
+            return;
+        }
+        reportContext = context.getApplicationContext();
+        reportFileName = "startup-" + System.currentTimeMillis() + ".json";
+        final Context appContext = reportContext;
+        reportWriter.execute(() -> {
+            writeReportFile(appContext);
+            pruneReports(getReportDirectory(appContext));
+        });
+    }
+
+    private static void writeReportFile(Context appContext) {
+        try {
+            JSONObject report = toJson();
+            report.put("createdAt", System.currentTimeMillis());
+            report.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+            report.put("sdkInt", Build.VERSION.SDK_INT);
+            try {
+                PackageInfo packageInfo = appContext.getPackageManager().getPackageInfo(appContext.getPackageName(), 0);
+                report.put("versionName", packageInfo.versionName);
+                report.put("versionCode", Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                    ? packageInfo.getLongVersionCode() : packageInfo.versionCode);
+            } catch (PackageManager.NameNotFoundException ignored) {
+                // Own package is always installed
+            }
+
+            File reportDir = new File(appContext.getFilesDir(), REPORT_DIR);
+            if (!reportDir.exists() && !reportDir.mkdirs()) {
+                Log.w(TAG, "Could not create startup report directory");
+                return;
+            }
+            byte[] content = report.toString().getBytes(StandardCharsets.UTF_8);
+            writeFile(new File(reportDir, reportFileName), content);
+            writeFile(new File(reportDir, "latest.json"), content);
+
+            Log.d(TAG, "📄 Startup report written: " + report);
+        } catch (JSONException | IOException e) {
+            Log.w(TAG, "Failed to write startup report: " + e.getMessage());
+        }
+    }
+
+    public static File getReportDirectory(Context context) {
+        return new File(context.getFilesDir(), REPORT_DIR);
+    }
+
+    private static long processStartElapsed() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        return CLASS_LOAD_ELAPSED;
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+    }
+
+    private static void pruneReports(File reportDir) {
+        File[] reports = reportDir.listFiles((dir, name) -> name.startsWith("startup-"));
+        if (reports == null || reports.length <= MAX_REPORTS) {
+            return;
+        }
+        // Report names embed their timestamp, so name order is age order
+        Arrays.sort(reports, (a, b) -> a.getName().compareTo(b.getName()));
+        for (int i = 0; i < reports.length - MAX_REPORTS; i++) {
+            reports[i].delete();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which FCM token and topic subscriptions the push server has acknowledged, so the
+ * app only uploads when one of them changes instead of on every launch. Changes are sent as one
+ * batched request by TokenRegistrationWorker, which WorkManager retries with exponential backoff.
+ */
+public final class TokenRegistrar {
+    private static final String TAG = "TokenRegistrar";
+    private static final String PREFS_NAME = "fcm_registration";
+    private static final String KEY_TOKEN = "token";
+    private static final String KEY_TOPICS = "topics";
+    private static final String KEY_ACKED_TOKEN = "acked_token";
+    private static final String KEY_ACKED_TOPICS = "acked_topics";
+    static final String UNIQUE_WORK = "fcm_token_registration";
+    // Short delay on first registration so the token and topics go out in the same request
+    private static final long BATCH_DELAY_MS = 2000;
+    // Token refreshes arrive for many devices at once (e.g. after an update), spread them out
+    private static final long REFRESH_JITTER_MS = 30000;
+    private static final long BACKOFF_SECONDS = 30;
+
+    private static final Random random = new Random();
+
+    private TokenRegistrar() {
+    }
+
+    /**
+     * Record the current FCM token, uploading it only when the server has not acknowledged it yet
+     */
+    public static void onToken(Context context, String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        synchronized (TokenRegistrar.class) {
+            prefs(context).edit().putString(KEY_TOKEN, token).commit();
+        }
+        scheduleIfPending(context);
+    }
+
+    /**
+     * Subscribe to a topic in addition to the ones in res/values/config.xml
+     */
+    public static void subscribe(Context context, String topic) {
+        synchronized (TokenRegistrar.class) {
+            SharedPreferences prefs = prefs(context);
+            Set<String> topics = new TreeSet<>(prefs.getStringSet(KEY_TOPICS, Collections.<String>emptySet()));
+            if (!topics.add(topic)) {
+                return;
+            }
+            prefs.edit().putStringSet(KEY_TOPICS, topics).commit();
+        }
+        scheduleIfPending(context);
+    }
+
+    /**
+     * What still has to be sent, or null when the server is up to date
+     */
+    static synchronized Pending pending(Context context) {
+        SharedPreferences prefs = prefs(context);
+        String token = prefs.getString(KEY_TOKEN, null);
+        if (token == null) {
+            return null;
+        }
+
+        Set<String> topics = new TreeSet<>(Arrays.asList(context.getResources().getStringArray(R.array.push_topics)));
+        topics.addAll(prefs.getStringSet(KEY_TOPICS, Collections.<String>emptySet()));
+        String ackedToken = prefs.getString(KEY_ACKED_TOKEN, null);
+        Set<String> ackedTopics = new TreeSet<>(prefs.getStringSet(KEY_ACKED_TOPICS, Collections.<String>emptySet()));
+        if (token.equals(ackedToken) && topics.equals(ackedTopics)) {
+            return null;
+        }
+
+        Pending pending = new Pending();
+        pending.token = token;
+        pending.topics = topics;
+        if (token.equals(ackedToken)) {
+            ackedTopics.removeAll(topics);
+            pending.removedTopics = ackedTopics;
+        } else {
+            // The server subscribes the new token to the old token's topics as well
+            pending.previousToken = ackedToken;
+            pending.removedTopics = Collections.emptySet();
+        }
+        return pending;
+    }
+
+    /**
+     * Mark an upload as accepted by the server
+     */
+    static synchronized void acknowledge(Context context, Pending pending) {
+        prefs(context).edit()
+            .putString(KEY_ACKED_TOKEN, pending.token)
+            .putStringSet(KEY_ACKED_TOPICS, pending.topics)
+            .commit();
+        Log.d(TAG, "✅ Push registration acknowledged - topics: " + pending.topics);
+    }
+
+    private static void scheduleIfPending(Context context) {
+        Pending pending = pending(context);
+        if (pending == null) {
+            Log.d(TAG, "🔑 FCM token already registered, nothing to upload");
+            return;
+        }
+
+        long delayMs = pending.previousToken != null ? random.nextInt((int) REFRESH_JITTER_MS) : BATCH_DELAY_MS;
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(TokenRegistrationWorker.class)
+            .setConstraints(new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build())
+            .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+            .build();
+        // A queued upload reads the latest state when it runs, so it can absorb this change
+        WorkManager.getInstance(context).enqueueUniqueWork(UNIQUE_WORK, ExistingWorkPolicy.KEEP, request);
+        Log.d(TAG, "📤 Push registration scheduled in " + delayMs + " ms");
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static class Pending {
+        String token;
+        String previousToken;
+        Set<String> topics;
+        Set<String> removedTopics;
+    }
+}
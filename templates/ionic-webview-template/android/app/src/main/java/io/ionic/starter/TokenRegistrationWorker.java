@@ -0,0 +1,120 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Uploads the pending FCM token and topic changes to the push server's /api/register-token in
+ * a single batched request
+ */
+public class TokenRegistrationWorker extends Worker {
+    private static final String TAG = "TokenRegistration";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    // WorkManager keeps retrying otherwise, the next launch or token refresh schedules a new upload
+    private static final int MAX_ATTEMPTS = 8;
+    // Changes that arrive while an upload is in flight are sent by the same run
+    private static final int MAX_PASSES = 3;
+
+    public TokenRegistrationWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String serverUrl = context.getString(R.string.push_server_url).trim();
+        if (serverUrl.isEmpty() || serverUrl.startsWith("{{")) {
+            Log.d(TAG, "No push server configured, skipping token registration");
+            return Result.success();
+        }
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            TokenRegistrar.Pending pending = TokenRegistrar.pending(context);
+            if (pending == null) {
+                return Result.success();
+            }
+
+            int status;
+            try {
+                status = upload(serverUrl, pending);
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "⚠️ Token registration failed (attempt " + (getRunAttemptCount() + 1) + "): " + e.getMessage());
+                return retryOrGiveUp();
+            }
+
+            if (status >= 200 && status < 300) {
+                TokenRegistrar.acknowledge(context, pending);
+            } else if (status == 429 || status >= 500) {
+                Log.w(TAG, "⚠️ Push server busy (HTTP " + status + "), retrying with backoff");
+                return retryOrGiveUp();
+            } else {
+                // The request itself is wrong, retrying will not help
+                Log.e(TAG, "❌ Push server rejected token registration: HTTP " + status);
+                return Result.failure();
+            }
+        }
+        return Result.success();
+    }
+
+    private Result retryOrGiveUp() {
+        return getRunAttemptCount() + 1 < MAX_ATTEMPTS ? Result.retry() : Result.failure();
+    }
+
+    private int upload(String serverUrl, TokenRegistrar.Pending pending) throws IOException, JSONException {
+        Context context = getApplicationContext();
+        JSONObject registration = new JSONObject()
+            .put("token", pending.token)
+            .put("platform", "android")
+            .put("appId", context.getPackageName())
+            .put("appVersion", appVersionName(context))
+            .put("topics", new JSONArray(pending.topics))
+            .put("removedTopics", new JSONArray(pending.removedTopics));
+        if (pending.previousToken != null) {
+            registration.put("previousToken", pending.previousToken);
+        }
+        byte[] body = new JSONObject()
+            .put("registrations", new JSONArray().put(registration))
+            .toString()
+            .getBytes(StandardCharsets.UTF_8);
+
+        String endpoint = serverUrl.replaceAll("/+$", "") + "/api/register-token";
+        HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try {
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            Log.d(TAG, "📤 Token registration sent to " + endpoint + " - HTTP " + status);
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String appVersionName(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,965 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.MimeTypeMap;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import android.webkit.WebSettings;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Size-bounded LRU disk cache for static WebView subresources (CSS, JS, fonts, images).
+ * Entries are keyed by URL plus the request header values named in the response's
+ * Vary header, and stale entries are revalidated with ETag / Last-Modified so weak
+ * cache headers on the website no longer force a full re-download on every cold start.
+ * The same cache also holds pages prefetched when a push notification arrives, which are
+ * handed to the WebView once when the user taps through.
+ */
+public class WebResourceCache {
+    private static final String TAG = "WebResourceCache";
+    private static final String CACHE_DIR = "web_resource_cache";
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+    private static final long PREFETCH_DEADLINE_MS = 20000;
+    private static final int MAX_DOCUMENT_SCAN_BYTES = 512 * 1024;
+
+    private static final Pattern LINK_TAG = Pattern.compile("<link\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SCRIPT_TAG = Pattern.compile("<script\\b[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+        "([a-zA-Z-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+
+    private static final Set<String> CACHEABLE_EXTENSIONS = new HashSet<>(Arrays.asList(
+        "css", "js", "mjs", "woff", "woff2", "ttf", "otf", "eot",
+        "png", "jpg", "jpeg", "gif", "webp", "avif", "svg", "ico"
+    ));
+
+    // Headers that describe the network transfer rather than the cached body
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+        "content-encoding", "content-length", "transfer-encoding", "connection",
+        "keep-alive", "set-cookie", "set-cookie2"
+    ));
+
+    private static WebResourceCache instance;
+
+    private final Context context;
+    private final File directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final long heuristicFreshnessMs;
+    private final long prefetchDocumentTtlMs;
+    private final int maxPrefetchSubresources;
+
+    // Access-ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, List<String>> varyByUrl = new HashMap<>();
+    private long currentBytes = 0;
+    private boolean loaded = false;
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+    // Separate thread so a slow prefetch never holds up refreshes for the visible page
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong bytesFromCache = new AtomicLong();
+    private final AtomicLong bytesFromNetwork = new AtomicLong();
+    private final AtomicLong prefetchCount = new AtomicLong();
+    private final AtomicLong prefetchHitCount = new AtomicLong();
+
+    private WebResourceCache(Context context, File directory, long maxBytes, long maxEntryBytes,
+                             long heuristicFreshnessMs, long prefetchDocumentTtlMs, int maxPrefetchSubresources) {
+        this.context = context;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+        this.heuristicFreshnessMs = heuristicFreshnessMs;
+        this.prefetchDocumentTtlMs = prefetchDocumentTtlMs;
+        this.maxPrefetchSubresources = maxPrefetchSubresources;
+    }
+
+    /**
+     * Process-wide cache shared by MainActivity and the FCM service, sized from res/values/config.xml
+     */
+    public static synchronized WebResourceCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            Resources resources = appContext.getResources();
+            instance = new WebResourceCache(
+                appContext,
+                new File(appContext.getCacheDir(), CACHE_DIR),
+                resources.getInteger(R.integer.web_cache_max_size_mb) * 1024L * 1024L,
+                resources.getInteger(R.integer.web_cache_max_entry_size_mb) * 1024L * 1024L,
+                resources.getInteger(R.integer.web_cache_heuristic_freshness_minutes) * 60L * 1000L,
+                resources.getInteger(R.integer.web_prefetch_document_ttl_minutes) * 60L * 1000L,
+                resources.getInteger(R.integer.web_prefetch_max_subresources));
+        }
+        return instance;
+    }
+
+    /**
+     * Serve a subresource from the cache, revalidating or downloading it when needed.
+     * Returns null when the request is not cacheable so the WebView loads it normally.
+     */
+    public WebResourceResponse fetch(WebResourceRequest request) {
+        if (request.isForMainFrame()) {
+            return servePrefetchedDocument(request);
+        }
+        if (!isCacheable(request)) {
+            return null;
+        }
+
+        String url = request.getUrl().toString();
+        Map<String, String> requestHeaders = request.getRequestHeaders();
+        Entry cached;
+        synchronized (this) {
+            ensureLoaded();
+            cached = entries.get(keyFor(url, requestHeaders));
+        }
+
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            hitCount.incrementAndGet();
+            return respond(cached);
+        }
+
+        try {
+            return fetchFromNetwork(url, requestHeaders, cached, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Network fetch failed for " + url + ": " + e.getMessage());
+            // Serve stale content rather than failing when the network is unavailable
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return respond(cached);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Whether a cached copy (fresh or stale) exists for this request
+     */
+    public boolean contains(WebResourceRequest request) {
+        if (request.isForMainFrame()) {
+            String url = normalizeDocumentUrl(request.getUrl());
+            synchronized (this) {
+                ensureLoaded();
+                Entry prefetched = url == null ? null : entries.get(documentKey(url));
+                return prefetched != null && prefetched.document;
+            }
+        }
+        if (!isCacheable(request)) {
+            return false;
+        }
+        synchronized (this) {
+            ensureLoaded();
+            return entries.containsKey(keyFor(request.getUrl().toString(), request.getRequestHeaders()));
+        }
+    }
+
+    /**
+     * Download a resource into the cache off the request path, e.g. after it was served from the bundled snapshot
+     */
+    public void refreshInBackground(WebResourceRequest request) {
+        if (!isCacheable(request)) {
+            return;
+        }
+        final String url = request.getUrl().toString();
+        final Map<String, String> requestHeaders = request.getRequestHeaders() == null
+            ? new HashMap<String, String>()
+            : new HashMap<>(request.getRequestHeaders());
+        refreshExecutor.execute(() -> {
+            Entry cached;
+            synchronized (this) {
+                ensureLoaded();
+                cached = entries.get(keyFor(url, requestHeaders));
+            }
+            try {
+                closeQuietly(fetchFromNetwork(url, requestHeaders, cached, false));
+            } catch (IOException e) {
+                Log.w(TAG, "Background refresh failed for " + url + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Download a page and its critical stylesheets, scripts and preloads in the background so a
+     * later navigation to it is served from disk. Bounded by the subresource limit and a deadline.
+     */
+    public Future<?> prefetch(String url) {
+        final String documentUrl = url == null ? null : normalizeDocumentUrl(Uri.parse(url));
+        if (documentUrl == null) {
+            return null;
+        }
+        return prefetchExecutor.submit(() -> {
+            long deadline = SystemClock.elapsedRealtime() + PREFETCH_DEADLINE_MS;
+            // Match the WebView's user agent so the server returns the same variant
+            Map<String, String> requestHeaders = new HashMap<>();
+            requestHeaders.put("User-Agent", WebSettings.getDefaultUserAgent(context) + " CapacitorWebView");
+
+            String html;
+            try {
+                Map<String, String> documentHeaders = new HashMap<>(requestHeaders);
+                documentHeaders.put("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+                html = fetchDocument(documentUrl, documentHeaders);
+            } catch (IOException e) {
+                Log.w(TAG, "Prefetch failed for " + documentUrl + ": " + e.getMessage());
+                return;
+            }
+            if (html == null) {
+                return;
+            }
+
+            int fetched = 0;
+            for (String subresourceUrl : extractCriticalSubresources(html, documentUrl)) {
+                if (fetched >= maxPrefetchSubresources || SystemClock.elapsedRealtime() > deadline) {
+                    break;
+                }
+                if (!isCacheableUrl(Uri.parse(subresourceUrl))) {
+                    continue;
+                }
+                Entry cached;
+                synchronized (this) {
+                    ensureLoaded();
+                    cached = entries.get(keyFor(subresourceUrl, requestHeaders));
+                }
+                if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                    continue;
+                }
+                try {
+                    closeQuietly(fetchFromNetwork(subresourceUrl, requestHeaders, cached, false));
+                    fetched++;
+                } catch (IOException e) {
+                    Log.w(TAG, "Prefetch failed for " + subresourceUrl + ": " + e.getMessage());
+                }
+            }
+            prefetchCount.incrementAndGet();
+            Log.d(TAG, "⚡ Prefetched " + documentUrl + " with " + fetched + " subresources");
+        });
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    public long getBytesFromCache() {
+        return bytesFromCache.get();
+    }
+
+    public long getBytesFromNetwork() {
+        return bytesFromNetwork.get();
+    }
+
+    public long getPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    public long getPrefetchHitCount() {
+        return prefetchHitCount.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public void logStats() {
+        Log.d(TAG, "📊 Cache stats - hits: " + getHitCount()
+            + ", misses: " + getMissCount()
+            + ", revalidated: " + getRevalidatedCount()
+            + ", bytes from cache: " + getBytesFromCache()
+            + ", bytes from network: " + getBytesFromNetwork()
+            + ", prefetched pages: " + getPrefetchCount() + " (" + getPrefetchHitCount() + " opened)"
+            + ", entries: " + getEntryCount()
+            + ", size: " + getSizeBytes() + "/" + maxBytes);
+    }
+
+    private boolean isCacheable(WebResourceRequest request) {
+        if (request.isForMainFrame() || !"GET".equalsIgnoreCase(request.getMethod())) {
+            return false;
+        }
+        if (request.getRequestHeaders() != null && request.getRequestHeaders().containsKey("Range")) {
+            return false;
+        }
+        return isCacheableUrl(request.getUrl());
+    }
+
+    private static boolean isCacheableUrl(Uri uri) {
+        String scheme = uri.getScheme();
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return false;
+        }
+        return CACHEABLE_EXTENSIONS.contains(extensionOf(uri));
+    }
+
+    /**
+     * Hand a document prefetched for a push notification to the WebView. Prefetched documents are
+     * one-shot, later navigations to the same URL go to the network as usual.
+     */
+    private WebResourceResponse servePrefetchedDocument(WebResourceRequest request) {
+        if (!"GET".equalsIgnoreCase(request.getMethod())) {
+            return null;
+        }
+        String url = normalizeDocumentUrl(request.getUrl());
+        if (url == null) {
+            return null;
+        }
+        synchronized (this) {
+            ensureLoaded();
+            Entry prefetched = entries.get(documentKey(url));
+            if (prefetched == null || !prefetched.document) {
+                return null;
+            }
+            WebResourceResponse response = null;
+            if (System.currentTimeMillis() - prefetched.storedAt < prefetchDocumentTtlMs) {
+                // The open stream keeps the body readable after the file is removed below
+                response = respond(prefetched);
+            }
+            remove(prefetched.key);
+            if (response != null) {
+                hitCount.incrementAndGet();
+                prefetchHitCount.incrementAndGet();
+                Log.d(TAG, "⚡ Served prefetched page: " + url);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Fetch and store a document, returning its markup for subresource discovery
+     */
+    private String fetchDocument(String url, Map<String, String> requestHeaders) throws IOException {
+        WebResourceResponse response = fetchFromNetwork(url, requestHeaders, null, true);
+        if (response == null || response.getData() == null) {
+            return null;
+        }
+        try (InputStream in = response.getData()) {
+            if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[16 * 1024];
+            int read;
+            while (buffer.size() < MAX_DOCUMENT_SCAN_BYTES && (read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            // Only ASCII markup matters for finding tags, so any byte-preserving charset works
+            return new String(buffer.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private WebResourceResponse fetchFromNetwork(String url, Map<String, String> requestHeaders, Entry cached,
+                                                 boolean document) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setInstanceFollowRedirects(true);
+
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                // Let HttpURLConnection negotiate compression so the body we store is decoded
+                if (!"accept-encoding".equalsIgnoreCase(header.getKey())) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+        }
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null && !cookies.isEmpty()) {
+            connection.setRequestProperty("Cookie", cookies);
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        storeCookies(url, connection);
+
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            connection.disconnect();
+            revalidatedCount.incrementAndGet();
+            hitCount.incrementAndGet();
+            synchronized (this) {
+                cached.storedAt = System.currentTimeMillis();
+                writeMeta(cached);
+            }
+            return respond(cached);
+        }
+
+        missCount.incrementAndGet();
+
+        if (status >= 300 && status < 400) {
+            // WebResourceResponse cannot carry redirects, let the WebView handle it
+            connection.disconnect();
+            return null;
+        }
+        if (document && !url.equals(connection.getURL().toString())) {
+            // A redirected page would resolve relative URLs against the wrong base
+            connection.disconnect();
+            Log.d(TAG, "Not prefetching redirected page " + url + " -> " + connection.getURL());
+            return null;
+        }
+
+        Map<String, String> responseHeaders = collectHeaders(connection);
+        String mimeType = mimeTypeOf(connection.getContentType(), url);
+        String encoding = charsetOf(connection.getContentType());
+        String reason = connection.getResponseMessage();
+        if (reason == null || reason.isEmpty()) {
+            reason = status == HttpURLConnection.HTTP_OK ? "OK" : "Status " + status;
+        }
+
+        if (status != HttpURLConnection.HTTP_OK || !isStorable(connection)) {
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new WebResourceResponse(mimeType, encoding, status, reason, responseHeaders, body);
+        }
+
+        Entry entry = new Entry();
+        entry.document = document;
+        // Documents are matched by URL alone, the WebView's navigation headers are not known up front
+        entry.varyHeaders = document ? new ArrayList<String>() : parseVary(connection.getHeaderField("Vary"));
+        entry.key = keyFor(url, requestHeaders, entry.varyHeaders);
+        entry.url = url;
+        entry.statusCode = status;
+        entry.reason = reason;
+        entry.mimeType = mimeType;
+        entry.encoding = encoding;
+        entry.headers = responseHeaders;
+        entry.etag = connection.getHeaderField("ETag");
+        entry.lastModified = connection.getHeaderField("Last-Modified");
+        entry.storedAt = System.currentTimeMillis();
+        entry.freshnessMs = freshnessOf(connection);
+
+        // Unique per download, concurrent fetches of the same URL must not write into each other
+        File tmpFile = File.createTempFile(entry.key + ".", ".tmp", directory);
+        long size;
+        try (InputStream in = connection.getInputStream(); OutputStream out = new FileOutputStream(tmpFile)) {
+            size = copy(in, out);
+        } catch (IOException e) {
+            tmpFile.delete();
+            throw e;
+        } finally {
+            connection.disconnect();
+        }
+        bytesFromNetwork.addAndGet(size);
+        entry.size = size;
+
+        if (size > maxEntryBytes) {
+            // Too large to keep, serve it once from the temp file and drop it
+            return new WebResourceResponse(mimeType, encoding, status, reason, responseHeaders,
+                new DeleteOnCloseInputStream(tmpFile));
+        }
+
+        synchronized (this) {
+            commit(entry, tmpFile);
+        }
+        return new WebResourceResponse(mimeType, encoding, status, reason, responseHeaders,
+            new FileInputStream(bodyFile(entry.key)));
+    }
+
+    private WebResourceResponse respond(Entry entry) {
+        try {
+            InputStream body = new FileInputStream(bodyFile(entry.key));
+            bytesFromCache.addAndGet(entry.size);
+            return new WebResourceResponse(entry.mimeType, entry.encoding, entry.statusCode, entry.reason,
+                entry.headers, body);
+        } catch (IOException e) {
+            Log.w(TAG, "Cached body missing for " + entry.url + ", dropping entry");
+            synchronized (this) {
+                remove(entry.key);
+            }
+            return null;
+        }
+    }
+
+    private boolean isStorable(HttpURLConnection connection) {
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        if (cacheControl.contains("no-store")) {
+            return false;
+        }
+        String vary = connection.getHeaderField("Vary");
+        if (vary != null && vary.trim().equals("*")) {
+            return false;
+        }
+        long contentLength = parseLong(connection.getHeaderField("Content-Length"), -1);
+        return contentLength < 0 || contentLength <= maxEntryBytes;
+    }
+
+    private long freshnessOf(HttpURLConnection connection) {
+        String cacheControl = lower(connection.getHeaderField("Cache-Control"));
+        if (cacheControl.contains("no-cache")) {
+            return 0;
+        }
+        for (String directive : cacheControl.split(",")) {
+            String trimmed = directive.trim();
+            if (trimmed.startsWith("max-age=")) {
+                return Math.max(0, parseLong(trimmed.substring("max-age=".length()), 0)) * 1000L;
+            }
+        }
+        long expires = connection.getHeaderFieldDate("Expires", 0);
+        long date = connection.getHeaderFieldDate("Date", System.currentTimeMillis());
+        if (expires > 0) {
+            return Math.max(0, expires - date);
+        }
+        // Weak or missing cache headers - fall back to the configured heuristic lifetime
+        return heuristicFreshnessMs;
+    }
+
+    private void commit(Entry entry, File tmpFile) {
+        remove(entry.key);
+        File body = bodyFile(entry.key);
+        if (!tmpFile.renameTo(body)) {
+            Log.w(TAG, "Could not move downloaded body into cache for " + entry.url);
+            tmpFile.delete();
+            return;
+        }
+        entries.put(entry.key, entry);
+        varyByUrl.put(entry.url, entry.varyHeaders);
+        currentBytes += entry.size;
+        writeMeta(entry);
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            currentBytes -= eldest.size;
+            bodyFile(eldest.key).delete();
+            metaFile(eldest.key).delete();
+        }
+    }
+
+    private void remove(String key) {
+        Entry existing = entries.remove(key);
+        if (existing != null) {
+            currentBytes -= existing.size;
+        }
+        bodyFile(key).delete();
+        metaFile(key).delete();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create cache directory: " + directory);
+            return;
+        }
+
+        File[] metaFiles = directory.listFiles((dir, name) -> name.endsWith(META_SUFFIX) || name.endsWith(".tmp"));
+        if (metaFiles == null) {
+            return;
+        }
+        // Oldest first so the restored access order matches the on-disk LRU order
+        Arrays.sort(metaFiles, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File metaFile : metaFiles) {
+            if (metaFile.getName().endsWith(".tmp")) {
+                metaFile.delete();
+                continue;
+            }
+            Entry entry = readMeta(metaFile);
+            if (entry == null || !bodyFile(entry.key).exists()) {
+                metaFile.delete();
+                continue;
+            }
+            entries.put(entry.key, entry);
+            varyByUrl.put(entry.url, entry.varyHeaders);
+            currentBytes += entry.size;
+        }
+        trimToSize();
+        Log.d(TAG, "📦 Loaded " + entries.size() + " cached web resources (" + currentBytes + " bytes)");
+    }
+
+    private void writeMeta(Entry entry) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("key", entry.key);
+            json.put("url", entry.url);
+            json.put("statusCode", entry.statusCode);
+            json.put("reason", entry.reason);
+            json.put("mimeType", entry.mimeType);
+            json.put("encoding", entry.encoding == null ? JSONObject.NULL : entry.encoding);
+            json.put("etag", entry.etag == null ? JSONObject.NULL : entry.etag);
+            json.put("lastModified", entry.lastModified == null ? JSONObject.NULL : entry.lastModified);
+            json.put("storedAt", entry.storedAt);
+            json.put("freshnessMs", entry.freshnessMs);
+            json.put("size", entry.size);
+            json.put("document", entry.document);
+            json.put("headers", new JSONObject(entry.headers));
+            json.put("vary", new JSONArray(entry.varyHeaders));
+            try (OutputStream out = new FileOutputStream(metaFile(entry.key))) {
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (JSONException | IOException e) {
+            Log.w(TAG, "Failed to write cache metadata for " + entry.url + ": " + e.getMessage());
+        }
+    }
+
+    private Entry readMeta(File metaFile) {
+        try (InputStream in = new FileInputStream(metaFile)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            copy(in, buffer);
+            JSONObject json = new JSONObject(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+
+            Entry entry = new Entry();
+            entry.key = json.getString("key");
+            entry.url = json.getString("url");
+            entry.statusCode = json.getInt("statusCode");
+            entry.reason = json.getString("reason");
+            entry.mimeType = json.getString("mimeType");
+            entry.encoding = json.isNull("encoding") ? null : json.getString("encoding");
+            entry.etag = json.isNull("etag") ? null : json.getString("etag");
+            entry.lastModified = json.isNull("lastModified") ? null : json.getString("lastModified");
+            entry.storedAt = json.getLong("storedAt");
+            entry.freshnessMs = json.getLong("freshnessMs");
+            entry.size = json.getLong("size");
+            entry.document = json.optBoolean("document", false);
+
+            entry.headers = new HashMap<>();
+            JSONObject headers = json.getJSONObject("headers");
+            Iterator<String> names = headers.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                entry.headers.put(name, headers.getString(name));
+            }
+
+            entry.varyHeaders = new ArrayList<>();
+            JSONArray vary = json.getJSONArray("vary");
+            for (int i = 0; i < vary.length(); i++) {
+                entry.varyHeaders.add(vary.getString(i));
+            }
+            return entry;
+        } catch (JSONException | IOException e) {
+            Log.w(TAG, "Discarding unreadable cache metadata " + metaFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String keyFor(String url, Map<String, String> requestHeaders) {
+        List<String> vary = varyByUrl.get(url);
+        return keyFor(url, requestHeaders, vary != null ? vary : Collections.<String>emptyList());
+    }
+
+    private static String keyFor(String url, Map<String, String> requestHeaders, List<String> varyHeaders) {
+        StringBuilder key = new StringBuilder(url);
+        for (String name : varyHeaders) {
+            key.append('\n').append(name).append(':');
+            String value = headerValue(requestHeaders, name);
+            if (value != null) {
+                key.append(value.trim());
+            }
+        }
+        return sha1(key.toString());
+    }
+
+    private static String documentKey(String url) {
+        return keyFor(url, null, Collections.<String>emptyList());
+    }
+
+    /**
+     * WebView requests carry no fragment and always have a path, normalize prefetched URLs the same way
+     */
+    private static String normalizeDocumentUrl(Uri uri) {
+        String scheme = uri.getScheme();
+        if ((!"http".equals(scheme) && !"https".equals(scheme)) || uri.getHost() == null) {
+            return null;
+        }
+        Uri.Builder builder = uri.buildUpon().fragment(null);
+        if (TextUtils.isEmpty(uri.getPath())) {
+            builder.path("/");
+        }
+        return builder.build().toString();
+    }
+
+    /**
+     * Render-blocking stylesheets and preloads first, then scripts, in document order
+     */
+    private static List<String> extractCriticalSubresources(String html, String baseUrl) {
+        Set<String> urls = new LinkedHashSet<>();
+        Matcher links = LINK_TAG.matcher(html);
+        while (links.find()) {
+            Map<String, String> attributes = parseAttributes(links.group());
+            String rel = lower(attributes.get("rel"));
+            if (rel.contains("stylesheet") || rel.contains("preload")) {
+                addResolved(urls, baseUrl, attributes.get("href"));
+            }
+        }
+        Matcher scripts = SCRIPT_TAG.matcher(html);
+        while (scripts.find()) {
+            addResolved(urls, baseUrl, parseAttributes(scripts.group()).get("src"));
+        }
+        return new ArrayList<>(urls);
+    }
+
+    private static Map<String, String> parseAttributes(String tag) {
+        Map<String, String> attributes = new HashMap<>();
+        Matcher matcher = ATTRIBUTE.matcher(tag);
+        while (matcher.find()) {
+            String value = matcher.group(2) != null ? matcher.group(2)
+                : matcher.group(3) != null ? matcher.group(3) : matcher.group(4);
+            attributes.put(matcher.group(1).toLowerCase(Locale.US), value.replace("&amp;", "&").trim());
+        }
+        return attributes;
+    }
+
+    private static void addResolved(Set<String> urls, String baseUrl, String reference) {
+        if (reference == null || reference.isEmpty() || reference.startsWith("data:")) {
+            return;
+        }
+        try {
+            URL resolved = new URL(new URL(baseUrl), reference);
+            if ("http".equals(resolved.getProtocol()) || "https".equals(resolved.getProtocol())) {
+                String url = resolved.toString();
+                int fragment = url.indexOf('#');
+                urls.add(fragment >= 0 ? url.substring(0, fragment) : url);
+            }
+        } catch (MalformedURLException e) {
+            // Unresolvable references are simply not prefetched
+        }
+    }
+
+    private static List<String> parseVary(String vary) {
+        List<String> names = new ArrayList<>();
+        if (vary == null) {
+            return names;
+        }
+        for (String name : vary.split(",")) {
+            String trimmed = name.trim().toLowerCase(Locale.US);
+            // Accept-Encoding is negotiated by HttpURLConnection and never reaches the WebView
+            if (!trimmed.isEmpty() && !trimmed.equals("accept-encoding")) {
+                names.add(trimmed);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private void storeCookies(String url, HttpURLConnection connection) {
+        List<String> setCookies = connection.getHeaderFields().get("Set-Cookie");
+        if (setCookies == null) {
+            return;
+        }
+        CookieManager cookieManager = CookieManager.getInstance();
+        for (String cookie : setCookies) {
+            cookieManager.setCookie(url, cookie);
+        }
+    }
+
+    private static Map<String, String> collectHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            String name = header.getKey();
+            if (name == null || header.getValue() == null || header.getValue().isEmpty()
+                    || HOP_BY_HOP_HEADERS.contains(name.toLowerCase(Locale.US))) {
+                continue;
+            }
+            headers.put(name, TextUtils.join(", ", header.getValue()));
+        }
+        return headers;
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String mimeTypeOf(String contentType, String url) {
+        if (contentType != null && !contentType.isEmpty()) {
+            return contentType.split(";")[0].trim();
+        }
+        String guessed = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extensionOf(Uri.parse(url)));
+        return guessed != null ? guessed : "application/octet-stream";
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase(Locale.US).startsWith("charset=")) {
+                return trimmed.substring("charset=".length()).replace("\"", "");
+            }
+        }
+        return null;
+    }
+
+    private static String extensionOf(Uri uri) {
+        String path = uri.getLastPathSegment();
+        if (path == null) {
+            return "";
+        }
+        int dot = path.lastIndexOf('.');
+        return dot >= 0 ? path.substring(dot + 1).toLowerCase(Locale.US) : "";
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.US);
+    }
+
+    private static void closeQuietly(WebResourceResponse response) {
+        if (response == null || response.getData() == null) {
+            return;
+        }
+        try {
+            response.getData().close();
+        } catch (IOException ignored) {
+            // Nothing useful to do, the body was only fetched to fill the cache
+        }
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private File metaFile(String key) {
+        return new File(directory, key + META_SUFFIX);
+    }
+
+    private static class Entry {
+        String key;
+        String url;
+        int statusCode;
+        String reason;
+        String mimeType;
+        String encoding;
+        Map<String, String> headers;
+        String etag;
+        String lastModified;
+        List<String> varyHeaders;
+        long storedAt;
+        long freshnessMs;
+        long size;
+        boolean document;
+
+        boolean isFresh(long now) {
+            return now - storedAt < freshnessMs;
+        }
+    }
+
+    /**
+     * Streams a one-off download and removes the backing file once the WebView is done with it.
+     */
+    private static class DeleteOnCloseInputStream extends FileInputStream {
+        private final File file;
+
+        DeleteOnCloseInputStream(File file) throws IOException {
+            super(file);
+            this.file = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package io.ionic.starter;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serves the website snapshot that the generator bundles into assets/snapshot/ at build time,
+ * so first paint on a fresh install does not need a network round trip. Entries are matched on
+ * host, path and query: a versioned asset (app.js?v=3) the site has moved on to since the build
+ * is not answered with the bundled app.js?v=1 but goes to the network. WebViewAssetLoader path
+ * handlers only see the path, so the lookup is done here.
+ */
+public class WebSnapshotLoader {
+    private static final String TAG = "WebSnapshotLoader";
+    private static final String ASSET_DIR = "snapshot";
+    private static final String MANIFEST_FILE = ASSET_DIR + "/manifest.json";
+    private static final String PREFS_NAME = "web_snapshot";
+    private static final String PREF_SHELL_SERVED = "shell_served_for";
+
+    private final Context context;
+    private final String snapshotId;
+    private final Set<String> hosts = new HashSet<>();
+    private final Map<String, SnapshotEntry> entriesByUrl = new HashMap<>();
+    private boolean serveShell;
+
+    private WebSnapshotLoader(Context context, String snapshotId) {
+        this.context = context.getApplicationContext();
+        this.snapshotId = snapshotId;
+    }
+
+    /**
+     * Load the bundled snapshot manifest, or return null when the APK was built without one
+     */
+    public static WebSnapshotLoader load(Context context) {
+        String manifestJson;
+        try (InputStream in = context.getAssets().open(MANIFEST_FILE)) {
+            manifestJson = readFully(in);
+        } catch (FileNotFoundException e) {
+            Log.d(TAG, "No website snapshot bundled with this build");
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read website snapshot manifest: " + e.getMessage());
+            return null;
+        }
+
+        try {
+            JSONObject manifest = new JSONObject(manifestJson);
+            WebSnapshotLoader loader = new WebSnapshotLoader(context, manifest.getString("createdAt"));
+            JSONArray entries = manifest.getJSONArray("entries");
+            for (int i = 0; i < entries.length(); i++) {
+                loader.addEntry(entries.getJSONObject(i));
+            }
+
+            // The HTML shell is only served once per bundled snapshot, afterwards the live page wins
+            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            loader.serveShell = !loader.snapshotId.equals(prefs.getString(PREF_SHELL_SERVED, null));
+
+            Log.d(TAG, "📸 Website snapshot loaded: " + loader.entriesByUrl.size() + " assets from " + loader.snapshotId);
+            return loader;
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid website snapshot manifest: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Serve a request from the snapshot if it was captured at build time
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || url.getHost() == null) {
+            return null;
+        }
+        if (request.isForMainFrame() && !serveShell) {
+            return null;
+        }
+
+        if (!hosts.contains(url.getHost())) {
+            return null;
+        }
+        WebResourceResponse response = serve(url.getHost(), url.getPath(), url.getEncodedQuery());
+        if (response != null && request.isForMainFrame()) {
+            serveShell = false;
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .putString(PREF_SHELL_SERVED, snapshotId)
+                .apply();
+            Log.d(TAG, "📸 Served HTML shell from snapshot: " + url);
+        }
+        return response;
+    }
+
+    private void addEntry(JSONObject json) throws JSONException {
+        SnapshotEntry entry = new SnapshotEntry();
+        entry.url = json.getString("url");
+        entry.file = json.getString("file");
+        entry.mimeType = json.getString("mimeType");
+        entry.encoding = json.isNull("encoding") ? null : json.optString("encoding", null);
+        entry.headers = new HashMap<>();
+        JSONObject headers = json.optJSONObject("headers");
+        if (headers != null) {
+            Iterator<String> names = headers.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                entry.headers.put(name, headers.getString(name));
+            }
+        }
+
+        Uri uri = Uri.parse(entry.url);
+        String host = uri.getHost();
+        if (host == null) {
+            return;
+        }
+        entriesByUrl.put(lookupKey(host, uri.getPath(), uri.getEncodedQuery()), entry);
+        hosts.add(host);
+    }
+
+    private WebResourceResponse serve(String host, String path, String query) {
+        SnapshotEntry entry = entriesByUrl.get(lookupKey(host, path, query));
+        if (entry == null) {
+            return null;
+        }
+        try {
+            InputStream body = context.getAssets().open(ASSET_DIR + "/" + entry.file);
+            return new WebResourceResponse(entry.mimeType, entry.encoding, 200, "OK", entry.headers, body);
+        } catch (IOException e) {
+            Log.w(TAG, "Snapshot asset missing for " + entry.url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String lookupKey(String host, String path, String query) {
+        String key = host + (path == null || path.isEmpty() ? "/" : path);
+        return query == null || query.isEmpty() ? key : key + "?" + query;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class SnapshotEntry {
+        String url;
+        String file;
+        String mimeType;
+        String encoding;
+        Map<String, String> headers;
+    }
+}
@@ -0,0 +1,161 @@
+package io.ionic.starter;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import com.getcapacitor.CapacitorWebView;
+
+/**
+ * Takes WebView start-up off the critical path of MainActivity.onCreate. The WebView provider
+ * (package lookup, class loader, native library) is loaded on a background thread as soon as
+ * the process starts, and a configured CapacitorWebView is created on the next idle pass of the
+ * main thread so BridgeActivity can adopt it instead of inflating a new one.
+ */
+public final class WebViewPrewarmer {
+    private static final String TAG = "WebViewPrewarmer";
+    private static final String USER_AGENT_SUFFIX = " CapacitorWebView";
+
+    // Only touched on the main thread
+    private static WebView prewarmedWebView;
+    private static MessageQueue.IdleHandler pendingCreate;
+
+    private WebViewPrewarmer() {
+    }
+
+    /**
+     * Start warming from Application.onCreate, optionally pre-creating a WebView instance
+     */
+    public static void start(Application application, boolean createInstance) {
+        new Thread(() -> {
+            StartupTracer.begin("webview_provider_warmup");
+            try {
+                // Public entry point that loads the provider without needing the main thread
+                WebSettings.getDefaultUserAgent(application);
+            } catch (Exception e) {
+                // No usable WebView (missing or updating), BridgeActivity shows its no-webview screen
+                Log.w(TAG, "WebView provider warm-up failed: " + e.getMessage());
+                return;
+            } finally {
+                StartupTracer.end("webview_provider_warmup");
+            }
+            Log.d(TAG, "🔥 WebView provider loaded");
+
+            if (createInstance) {
+                new Handler(Looper.getMainLooper()).post(() -> scheduleCreate(application));
+            }
+        }, "webview-warmup").start();
+    }
+
+    public static boolean hasPrewarmedWebView() {
+        return prewarmedWebView != null;
+    }
+
+    /**
+     * Build the content view BridgeActivity expects (capacitor_bridge_layout_main) around the
+     * pre-warmed WebView, creating the WebView now if it is not ready yet
+     */
+    public static View createBridgeLayout(Activity activity) {
+        WebView webView = obtain(activity);
+        CoordinatorLayout layout = new CoordinatorLayout(activity);
+        layout.addView(webView, new CoordinatorLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        return layout;
+    }
+
+    /**
+     * Apply the settings the website needs, skipped when the WebView was already configured
+     */
+    public static void configure(WebView webView) {
+        WebSettings webSettings = webView.getSettings();
+        String userAgent = webSettings.getUserAgentString();
+        if (userAgent != null && userAgent.endsWith(USER_AGENT_SUFFIX)) {
+            return;
+        }
+
+        // Enable mixed content (HTTP on HTTPS)
+        webSettings.setMixedContentMode(WebSettings.MIXED_CONTENT_ALWAYS_ALLOW);
+
+        // Enable DOM storage
+        webSettings.setDomStorageEnabled(true);
+
+        // Enable database storage
+        webSettings.setDatabaseEnabled(true);
+
+        // Enable JavaScript (Capacitor enables it as well)
+        webSettings.setJavaScriptEnabled(true);
+
+        // Allow file access
+        webSettings.setAllowFileAccess(true);
+        webSettings.setAllowContentAccess(true);
+
+        // Enable zooming
+        webSettings.setSupportZoom(true);
+        webSettings.setBuiltInZoomControls(true);
+        webSettings.setDisplayZoomControls(false);
+
+        // Enhanced caching for faster loading
+        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
+        webSettings.setDatabasePath(webView.getContext().getCacheDir().getAbsolutePath());
+
+        // Optimize loading performance
+        webSettings.setRenderPriority(WebSettings.RenderPriority.HIGH);
+        webSettings.setLoadWithOverviewMode(true);
+        webSettings.setUseWideViewPort(true);
+
+        // Set user agent to help with compatibility
+        webSettings.setUserAgentString(userAgent + USER_AGENT_SUFFIX);
+    }
+
+    private static void scheduleCreate(Application application) {
+        if (prewarmedWebView != null || pendingCreate != null) {
+            return;
+        }
+        pendingCreate = () -> {
+            pendingCreate = null;
+            StartupTracer.begin("webview_prewarm_create");
+            try {
+                // Created against the application, rebound to the activity when it is handed over
+                prewarmedWebView = create(new MutableContextWrapper(application));
+                Log.d(TAG, "🔥 WebView pre-created");
+            } catch (Exception e) {
+                Log.w(TAG, "WebView pre-creation failed: " + e.getMessage());
+            } finally {
+                StartupTracer.end("webview_prewarm_create");
+            }
+            return false;
+        };
+        Looper.myQueue().addIdleHandler(pendingCreate);
+    }
+
+    private static WebView obtain(Activity activity) {
+        if (pendingCreate != null) {
+            Looper.myQueue().removeIdleHandler(pendingCreate);
+            pendingCreate = null;
+        }
+
+        WebView webView = prewarmedWebView;
+        prewarmedWebView = null;
+        if (webView != null) {
+            ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+            return webView;
+        }
+        return create(activity);
+    }
+
+    private static WebView create(Context context) {
+        CapacitorWebView webView = new CapacitorWebView(context, null);
+        webView.setId(com.getcapacitor.android.R.id.webview);
+        configure(webView);
+        return webView;
+    }
+}
@@ -0,0 +1,54 @@
+package io.ionic.starter.baselineprofile;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Generates the Baseline Profile shipped with the app.
+ * Run with: ./gradlew :app:generateBaselineProfile
+ *
+ * The journey covers MainActivity.onCreate, the Capacitor bridge bootstrap and the first
+ * page load. FCM message handling cannot be triggered from here, it is covered by the
+ * handwritten rules in app/src/main/baseline-prof.txt.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collect(
+            getTargetAppId(),
+            /* maxIterations = */ 15,
+            /* stableIterations = */ 3,
+            /* outputFilePrefix = */ null,
+            /* includeInStartupProfile = */ true,
+            /* strictStability = */ false,
+            /* filterPredicate = */ className -> true,
+            scope -> {
+                scope.pressHome();
+                scope.startActivityAndWait();
+                // Give the WebView time to load the website so page load code is profiled too
+                scope.getDevice().waitForIdle(10000);
+                return Unit.INSTANCE;
+            }
+        );
+    }
+
+    static String getTargetAppId() {
+        String targetAppId = InstrumentationRegistry.getArguments().getString("targetAppId");
+        if (targetAppId == null) {
+            throw new IllegalStateException("targetAppId not passed as instrumentation runner arg");
+        }
+        return targetAppId;
+    }
+}
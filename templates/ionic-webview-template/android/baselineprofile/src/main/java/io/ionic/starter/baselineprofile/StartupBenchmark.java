@@ -0,0 +1,64 @@
+package io.ionic.starter.baselineprofile;
+
+import androidx.benchmark.macro.BaselineProfileMode;
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+/**
+ * Measures cold and warm startup with and without the Baseline Profile.
+ * Run with: ./gradlew :baselineprofile:pixel6Api34BenchmarkReleaseAndroidTest
+ *
+ * Comparing coldStartupNoCompilation with coldStartupBaselineProfile shows the JIT warm-up
+ * cost the profile removes from the first launch.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartupNoCompilation() {
+        startup(new CompilationMode.None(), StartupMode.COLD);
+    }
+
+    @Test
+    public void coldStartupBaselineProfile() {
+        startup(new CompilationMode.Partial(BaselineProfileMode.Require), StartupMode.COLD);
+    }
+
+    @Test
+    public void warmStartupBaselineProfile() {
+        startup(new CompilationMode.Partial(BaselineProfileMode.Require), StartupMode.WARM);
+    }
+
+    private void startup(CompilationMode compilationMode, StartupMode startupMode) {
+        benchmarkRule.measureRepeated(
+            BaselineProfileGenerator.getTargetAppId(),
+            Collections.singletonList(new StartupTimingMetric()),
+            compilationMode,
+            startupMode,
+            ITERATIONS,
+            scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            },
+            scope -> {
+                scope.startActivityAndWait();
+                return Unit.INSTANCE;
+            }
+        );
+    }
+}
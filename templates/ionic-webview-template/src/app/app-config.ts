@@ -0,0 +1,17 @@
+export interface AppConfig {
+  appName: string;
+  appSlug: string;
+  websiteUrl: string;
+}
+
+const defaults: AppConfig = {
+  appName: 'Timeless',
+  appSlug: 'timeless',
+  websiteUrl: 'https://example.com'
+};
+
+// Loaded at runtime from assets/app-config.js (see index.html)
+export const appConfig: AppConfig = {
+  ...defaults,
+  ...((globalThis as any).__EZGEN_CONFIG__ || {})
+};
@@ -8,6 +8,8 @@ import { CommonModule } from '@angular/common';
 import { addIcons } from 'ionicons';
 import { globe, refresh, home, eye, notifications } from 'ionicons/icons';
 import { PushNotificationService } from './services/push-notification.service';
+import { StartupTimingService } from './services/startup-timing.service';
+import { appConfig } from './app-config';
 
 @Component({
   selector: 'app-root',
@@ -15,7 +17,7 @@ import { PushNotificationService } from './services/push-notification.service';
   imports: [IonApp, IonContent, IonButton, IonIcon, IonText, IonSpinner, CommonModule],
 })
 export class AppComponent implements OnInit {
-  websiteUrl = 'https://example.com';
+  websiteUrl = appConfig.websiteUrl;
   safeUrl: SafeResourceUrl;
   isNative = false;
   loadingError = false;
@@ -25,7 +27,8 @@ export class AppComponent implements OnInit {
   
   constructor(
     private sanitizer: DomSanitizer,
-    private pushNotificationService: PushNotificationService
+    private pushNotificationService: PushNotificationService,
+    private startupTimingService: StartupTimingService
   ) {
     this.safeUrl = this.sanitizer.bypassSecurityTrustResourceUrl(this.websiteUrl);
     this.isNative = Capacitor.isNativePlatform();
@@ -45,17 +48,21 @@ export class AppComponent implements OnInit {
     // Initialize push notifications in background (non-blocking)
     console.log('⚙️ Starting push notifications initialization in background...');
     
-    // Use setTimeout to completely detach from the main initialization flow
-    setTimeout(() => {
+    // Wait for the main thread to go idle after the first render instead of a fixed delay
+    this.runWhenIdle(() => {
       this.initializePushNotifications().catch(error => {
         console.error('❌ Background push notification initialization failed:', error);
       });
-    }, 2000); // 2 second delay to ensure everything is ready
+    });
     
     // Initialize push notifications on native platforms
     if (this.isNative) {
       console.log('📱 Native platform detected, proceeding with native setup');
       
+      // Record when the Angular shell is up and log the native startup phases
+      await this.startupTimingService.mark('app_component_init');
+      this.startupTimingService.logTimings();
+      
       // On native platforms, redirect to the website URL directly
       // This uses the native WebView to load the website fullscreen
       await this.loadInNativeWebView();
@@ -69,17 +76,27 @@ export class AppComponent implements OnInit {
     console.log('✅ AppComponent ngOnInit completed');
   }
 
+  // Run non-critical work once the browser is idle (falls back to the next macrotask)
+  private runWhenIdle(task: () => void, timeoutMs = 3000) {
+    const requestIdle = (window as any).requestIdleCallback;
+    if (typeof requestIdle === 'function') {
+      requestIdle(() => task(), { timeout: timeoutMs });
+    } else {
+      setTimeout(task, 0);
+    }
+  }
+
   async initializePushNotifications() {
     try {
-      console.log('🚀 App Component: Initializing push notifications for Timeless app...');
+      console.log(`🚀 App Component: Initializing push notifications for ${appConfig.appName} app...`);
       console.log('📱 Platform check - isNative:', this.isNative);
       
       // Initialize push notifications - service now handles listeners internally
       console.log('⚙️ Calling pushNotificationService.initializePushNotifications()...');
       await this.pushNotificationService.initializePushNotifications();
       
-      console.log('📡 Subscribing to topic: timeless-updates');
-      this.pushNotificationService.subscribeToTopic('timeless-updates');
+      console.log(`📡 Subscribing to topic: ${appConfig.appSlug}-updates`);
+      this.pushNotificationService.subscribeToTopic(`${appConfig.appSlug}-updates`);
       
       console.log('✅ Push notifications initialization completed successfully');
     } catch (error) {
@@ -95,13 +112,13 @@ export class AppComponent implements OnInit {
       // Cache the website first for faster loading
       await this.preloadWebsite();
       
-      // Reduced wait time - push notifications can initialize in background
-      console.log('⏰ Waiting 2 seconds for essential initialization...');
-      setTimeout(() => {
+      // Navigate as soon as the shell is idle; the FCM token and topics are registered natively,
+      // so nothing in this page has to finish first
+      this.runWhenIdle(() => {
         console.log('🚀 Now redirecting to website for fullscreen experience...');
         // Use Capacitor's native WebView to navigate to the website (fullscreen)
         window.location.href = this.websiteUrl;
-      }, 2000); // Reduced from 8 seconds to 2 seconds
+      });
     } catch (error) {
       console.error('Error loading website in native WebView:', error);
       this.loadingError = true;
@@ -1,7 +1,9 @@
 import { Injectable } from '@angular/core';
 import { PushNotifications, Token, PushNotificationSchema, ActionPerformed } from '@capacitor/push-notifications';
 import { App } from '@capacitor/app';
+import { Capacitor } from '@capacitor/core';
 import { Router } from '@angular/router';
+import { appConfig } from '../app-config';
 
 @Injectable({
   providedIn: 'root'
@@ -279,6 +281,12 @@ export class PushNotificationService {
   }
 
   private async sendTokenToServer(token: string) {
+    // The native TokenRegistrar uploads the token only when it changes, with retries
+    if (Capacitor.getPlatform() === 'android') {
+      console.log('📱 Token registration handled natively');
+      return;
+    }
+    
     try {
       // Send token to your notification server
       const response = await fetch('http://localhost:3002/api/register-token', {
@@ -289,8 +297,8 @@ export class PushNotificationService {
         body: JSON.stringify({
           token: token,
           platform: 'android', // or detect platform
-          userId: 'timeless-user', // Replace with actual user ID
-          appName: 'Timeless',
+          userId: `${appConfig.appSlug}-user`, // Replace with actual user ID
+          appName: appConfig.appName,
           timestamp: new Date().toISOString()
         })
       });
@@ -384,6 +392,12 @@ export class PushNotificationService {
 
   // Subscribe to a topic
   async subscribeToTopic(topic: string) {
+    // Native registration batches topics (res/values/config.xml push_topics) with the token
+    if (Capacitor.getPlatform() === 'android') {
+      console.log(`📱 Topic subscription handled natively: ${topic}`);
+      return;
+    }
+    
     try {
       const currentToken = await this.getCurrentToken();
       if (!currentToken) {
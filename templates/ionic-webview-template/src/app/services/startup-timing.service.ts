@@ -0,0 +1,56 @@
+import { Injectable } from '@angular/core';
+import { Capacitor, registerPlugin } from '@capacitor/core';
+
+export interface StartupTimings {
+  // Milliseconds since process start for each startup milestone
+  milestones: { [name: string]: number };
+  // Durations in milliseconds of the synchronous startup sections
+  sections: { [name: string]: number };
+  details: { [name: string]: string };
+  processStartPrecise: boolean;
+}
+
+interface StartupTimingPlugin {
+  getTimings(): Promise<StartupTimings>;
+  mark(options: { name: string; detail?: string }): Promise<void>;
+}
+
+const StartupTiming = registerPlugin<StartupTimingPlugin>('StartupTiming');
+
+@Injectable({
+  providedIn: 'root'
+})
+export class StartupTimingService {
+
+  async getTimings(): Promise<StartupTimings | null> {
+    if (!Capacitor.isNativePlatform()) {
+      return null;
+    }
+    try {
+      return await StartupTiming.getTimings();
+    } catch (error) {
+      console.error('❌ Failed to read startup timings:', error);
+      return null;
+    }
+  }
+
+  // Record a web-side milestone next to the native ones (stored as js_<name>)
+  async mark(name: string, detail?: string): Promise<void> {
+    if (!Capacitor.isNativePlatform()) {
+      return;
+    }
+    try {
+      await StartupTiming.mark({ name, detail });
+    } catch (error) {
+      console.error('❌ Failed to record startup milestone:', error);
+    }
+  }
+
+  async logTimings(): Promise<void> {
+    const timings = await this.getTimings();
+    if (timings) {
+      console.log('⏱️ Startup milestones (ms since process start):', JSON.stringify(timings.milestones));
+      console.log('⏱️ Startup sections (ms):', JSON.stringify(timings.sections));
+    }
+  }
+}
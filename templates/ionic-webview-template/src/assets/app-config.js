@@ -0,0 +1,7 @@
+// Per-app values, written by EZ-GEN for every generated app. The web bundle itself is built once
+// per template version and shared by all apps, so nothing app-specific is compiled into it.
+self.__EZGEN_CONFIG__ = {
+  appName: 'Timeless',
+  appSlug: 'timeless',
+  websiteUrl: 'https://example.com'
+};
@@ -1,6 +1,9 @@
 // Service Worker for caching website content
-const CACHE_NAME = 'timeless-cache-v1';
-const WEBSITE_URL = 'http://timeless.ezassist.me';
+// Per-app values come from the generated app-config.js next to this file
+importScripts('app-config.js');
+const CACHE_NAME = `${self.__EZGEN_CONFIG__.appSlug}-cache-v1`;
+const WEBSITE_URL = self.__EZGEN_CONFIG__.websiteUrl;
+const WEBSITE_HOST = new URL(WEBSITE_URL).hostname;
 
 // Install event - cache essential resources
 self.addEventListener('install', (event) => {
@@ -35,7 +38,7 @@ self.addEventListener('activate', (event) => {
 // Fetch event - serve from cache or network
 self.addEventListener('fetch', (event) => {
   // Only handle requests to our website
-  if (event.request.url.includes('timeless.ezassist.me')) {
+  if (event.request.url.includes(WEBSITE_HOST)) {
     event.respondWith(
       caches.match(event.request)
         .then((response) => {
@@ -0,0 +1,116 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const os = require('os');
+const path = require('path');
+const fs = require('fs-extra');
+const { BuildCache } = require('../build-cache');
+
+async function tempDir(t, prefix) {
+  const dir = await fs.mkdtemp(path.join(os.tmpdir(), prefix));
+  t.after(() => fs.remove(dir));
+  return dir;
+}
+
+const inputs = {
+  templateVersion: 'v1',
+  appName: 'Shop',
+  websiteUrl: 'https://shop.example',
+  packageName: 'com.example.shop',
+  buildType: 'debug'
+};
+
+test('normalizes the inputs that do not change the build', async (t) => {
+  const cache = new BuildCache({ dir: await tempDir(t, 'ezgen-cache-') });
+  const key = await cache.computeKey(inputs);
+
+  assert.match(key, /^[0-9a-f]{64}$/);
+  assert.strictEqual(await cache.computeKey({ ...inputs, appName: ' Shop ', websiteUrl: 'HTTPS://SHOP.example/' }), key);
+  assert.strictEqual(await cache.computeKey({ ...inputs, pushServerUrl: '' }), key);
+});
+
+test('changes the key with every input that changes the build', async (t) => {
+  const dir = await tempDir(t, 'ezgen-cache-');
+  const cache = new BuildCache({ dir });
+  const key = await cache.computeKey(inputs);
+  const logoPath = path.join(dir, 'logo.png');
+  await fs.writeFile(logoPath, 'logo-a');
+  const withLogo = await cache.computeKey({ ...inputs, logo: { path: logoPath } });
+
+  for (const changed of [
+    { templateVersion: 'v2' },
+    { appName: 'Shop 2' },
+    { websiteUrl: 'https://shop.example/app' },
+    { packageName: 'com.example.other' },
+    { buildType: 'playstore' },
+    { pushServerUrl: 'https://push.example' },
+    { notificationChannels: [{ id: 'news' }] }
+  ]) {
+    assert.notStrictEqual(await cache.computeKey({ ...inputs, ...changed }), key, JSON.stringify(changed));
+  }
+  assert.notStrictEqual(withLogo, key);
+  await fs.writeFile(logoPath, 'logo-b');
+  assert.notStrictEqual(await cache.computeKey({ ...inputs, logo: { path: logoPath } }), withLogo);
+});
+
+test('stores and materializes projects with hard links, copies and rewrites where asked', async (t) => {
+  const root = await tempDir(t, 'ezgen-cache-');
+  const cache = new BuildCache({ dir: path.join(root, 'cache') });
+  const appDir = path.join(root, 'app');
+  await fs.outputFile(path.join(appDir, 'src/index.html'), 'index');
+  await fs.outputFile(path.join(appDir, 'android/app/build.gradle'), 'signed');
+  await fs.outputFile(path.join(appDir, 'android/app/release-key.keystore'), 'secret');
+  await fs.outputFile(path.join(appDir, 'android/app/build/intermediates/x'), 'build output');
+  await fs.outputFile(path.join(appDir, 'node_modules/pkg/index.js'), 'module');
+
+  await cache.store('key', appDir, { appName: 'Shop' }, {
+    skip: file => file.endsWith('.keystore'),
+    transform: file => file === 'android/app/build.gradle'
+      ? (source, destination) => fs.writeFile(destination, 'unsigned')
+      : null
+  });
+
+  const entryDir = path.join(root, 'cache', 'key');
+  assert.strictEqual((await fs.stat(path.join(entryDir, 'src/index.html'))).ino, (await fs.stat(path.join(appDir, 'src/index.html'))).ino);
+  assert.strictEqual(await fs.readFile(path.join(entryDir, 'android/app/build.gradle'), 'utf8'), 'unsigned');
+  for (const left of ['android/app/release-key.keystore', 'android/app/build', 'node_modules']) {
+    assert.ok(!(await fs.pathExists(path.join(entryDir, left))), `${left} is not cached`);
+  }
+
+  const entry = await cache.lookup('key');
+  assert.strictEqual(entry.appName, 'Shop');
+
+  const newAppDir = path.join(root, 'new-app');
+  await cache.materialize('key', newAppDir, { copy: file => file === 'android/app/build.gradle' });
+  assert.strictEqual((await fs.stat(path.join(newAppDir, 'src/index.html'))).ino, (await fs.stat(path.join(entryDir, 'src/index.html'))).ino);
+  const gradlePath = path.join(newAppDir, 'android/app/build.gradle');
+  assert.notStrictEqual((await fs.stat(gradlePath)).ino, (await fs.stat(path.join(entryDir, 'android/app/build.gradle'))).ino);
+  await fs.writeFile(gradlePath, 'signed again');
+  assert.strictEqual(await fs.readFile(path.join(entryDir, 'android/app/build.gradle'), 'utf8'), 'unsigned');
+});
+
+test('counts misses and drops expired entries', async (t) => {
+  const root = await tempDir(t, 'ezgen-cache-');
+  const cache = new BuildCache({ dir: path.join(root, 'cache'), maxAgeMs: 60 * 1000 });
+  await fs.outputFile(path.join(root, 'app/file'), 'x');
+  await cache.store('key', path.join(root, 'app'));
+
+  assert.strictEqual(await cache.lookup('missing'), null);
+  cache.index.entries.key.createdAt -= 2 * 60 * 1000;
+  assert.strictEqual(await cache.lookup('key'), null);
+  assert.ok(!(await fs.pathExists(path.join(root, 'cache', 'key'))));
+  assert.strictEqual((await cache.stats()).misses, 2);
+});
+
+test('evicts the least recently hit entries past the size limit', async (t) => {
+  const root = await tempDir(t, 'ezgen-cache-');
+  const cache = new BuildCache({ dir: path.join(root, 'cache'), maxBytes: 1500 });
+  await fs.outputFile(path.join(root, 'app/file'), Buffer.alloc(1000));
+
+  await cache.store('old', path.join(root, 'app'));
+  cache.index.entries.old.lastHitAt -= 1000;
+  await cache.store('new', path.join(root, 'app'));
+
+  assert.deepStrictEqual(Object.keys(cache.index.entries), ['new']);
+  assert.ok(!(await fs.pathExists(path.join(root, 'cache', 'old'))));
+  assert.strictEqual((await cache.stats()).evictions, 1);
+});
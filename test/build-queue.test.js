@@ -0,0 +1,117 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const { BuildQueue, QueueFullError } = require('../build-queue');
+
+// A job that runs until finish() is called
+function deferredJob(queue, id, priority, options = {}) {
+  let finish;
+  const done = new Promise(resolve => { finish = resolve; });
+  const job = queue.enqueue({ id, priority, run: () => done, ...options });
+  return { job, finish };
+}
+
+const settle = () => new Promise(resolve => setImmediate(resolve));
+
+test('runs at most one job per slot and starts the next when one finishes', async () => {
+  const queue = new BuildQueue({ slots: 2, maxBacklog: 10 });
+  const first = deferredJob(queue, 'a', 'debug');
+  const second = deferredJob(queue, 'b', 'debug');
+  const third = deferredJob(queue, 'c', 'debug');
+
+  assert.strictEqual(first.job.status, 'running');
+  assert.strictEqual(second.job.status, 'running');
+  assert.strictEqual(third.job.status, 'queued');
+  assert.strictEqual(queue.position('c'), 1);
+
+  first.finish('done');
+  await settle();
+  assert.strictEqual(first.job.status, 'completed');
+  assert.strictEqual(first.job.result, 'done');
+  assert.strictEqual(third.job.status, 'running');
+});
+
+test('starts waiting debug builds before Play Store builds, first come first served within a class', async () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 10 });
+  const running = deferredJob(queue, 'running', 'playstore');
+  deferredJob(queue, 'store-1', 'playstore');
+  deferredJob(queue, 'debug-1', 'debug');
+  deferredJob(queue, 'debug-2', 'debug');
+
+  assert.deepStrictEqual(queue.ordered().map(job => job.id), ['debug-1', 'debug-2', 'store-1']);
+  assert.strictEqual(queue.position('store-1'), 3);
+
+  running.finish();
+  await settle();
+  assert.strictEqual(queue.getJob('debug-1').status, 'running');
+});
+
+test('promotes a Play Store build that waited ten minutes ahead of newer debug builds', () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 10 });
+  deferredJob(queue, 'running', 'debug');
+  const { job: waiting } = deferredJob(queue, 'store', 'playstore');
+  deferredJob(queue, 'debug', 'debug');
+
+  assert.deepStrictEqual(queue.ordered().map(job => job.id), ['debug', 'store']);
+  waiting.queuedAt -= 10 * 60 * 1000;
+  assert.deepStrictEqual(queue.ordered().map(job => job.id), ['store', 'debug']);
+});
+
+test('refuses new jobs once the backlog is full and says when to retry', () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 2 });
+  deferredJob(queue, 'running', 'debug');
+  deferredJob(queue, 'waiting-1', 'debug');
+  deferredJob(queue, 'waiting-2', 'debug');
+
+  assert.throws(() => deferredJob(queue, 'rejected', 'debug'), (error) => {
+    assert.ok(error instanceof QueueFullError);
+    assert.ok(error.retryAfterSeconds >= 1);
+    return true;
+  });
+  assert.strictEqual(queue.getJob('rejected'), null);
+});
+
+test('rejects unknown priorities', () => {
+  const queue = new BuildQueue({ slots: 1 });
+  assert.throws(() => queue.enqueue({ id: 'x', priority: 'urgent', run: async () => {} }), /Unknown build priority/);
+});
+
+test('records failures without blocking the slot', async () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 10 });
+  const failing = queue.enqueue({ id: 'fail', priority: 'debug', run: async () => { throw new Error('gradle failed'); } });
+  const next = deferredJob(queue, 'next', 'debug');
+  await settle();
+
+  assert.strictEqual(failing.status, 'failed');
+  assert.strictEqual(failing.error, 'gradle failed');
+  assert.strictEqual(next.job.status, 'running');
+});
+
+test('a job waiting on another promise does not take a slot until it settles', async () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 10 });
+  let release;
+  const after = new Promise((resolve, reject) => { release = reject; });
+  const follower = deferredJob(queue, 'follower', 'debug', { after });
+  const other = deferredJob(queue, 'other', 'playstore');
+
+  assert.strictEqual(follower.job.status, 'queued');
+  assert.strictEqual(other.job.status, 'running');
+
+  // A failed leader still releases the follower
+  release(new Error('leader failed'));
+  other.finish();
+  await settle();
+  assert.strictEqual(follower.job.status, 'running');
+});
+
+test('estimates later finishes for jobs further back', () => {
+  const queue = new BuildQueue({ slots: 1, maxBacklog: 10 });
+  deferredJob(queue, 'running', 'debug');
+  deferredJob(queue, 'first', 'debug');
+  deferredJob(queue, 'second', 'debug');
+
+  const first = queue.eta('first');
+  const second = queue.eta('second');
+  assert.ok(first > 0);
+  assert.ok(second > first);
+  assert.strictEqual(queue.describe('second').position, 2);
+});
@@ -0,0 +1,61 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const { GOLDEN_APP, appReplacements, getStatus, substituteSentinels } = require('../golden-apk');
+
+const app = {
+  appName: 'Tom & Jerry <Shop>',
+  slug: 'tom---jerry--shop-',
+  packageName: 'com.example.shop',
+  websiteUrl: 'https://shop.example/start?a=1&b=2'
+};
+
+test('replaces the website URL before its host and the package path before the package name', () => {
+  const replacements = appReplacements(app);
+  const smali = [
+    '.class public Lcom/ezgen/golden/MainActivity;',
+    `const-string v0, "${GOLDEN_APP.websiteUrl}"`,
+    `const-string v1, "${GOLDEN_APP.host}"`,
+    `const-string v2, "${GOLDEN_APP.packageName}"`
+  ].join('\n');
+
+  assert.strictEqual(substituteSentinels(smali, replacements), [
+    '.class public Lcom/example/shop/MainActivity;',
+    'const-string v0, "https://shop.example/start?a=1&b=2"',
+    'const-string v1, "shop.example"',
+    'const-string v2, "com.example.shop"'
+  ].join('\n'));
+});
+
+test('escapes values written into decoded XML only', () => {
+  const replacements = appReplacements(app);
+  const manifest = `<manifest package="${GOLDEN_APP.packageName}"><application android:label="${GOLDEN_APP.appName}"/></manifest>`;
+  assert.strictEqual(substituteSentinels(manifest, replacements, { xml: true }),
+    '<manifest package="com.example.shop"><application android:label="Tom &amp; Jerry &lt;Shop>"/></manifest>');
+
+  const appConfig = `appName: '${GOLDEN_APP.appName}', appSlug: '${GOLDEN_APP.slug}'`;
+  assert.strictEqual(substituteSentinels(appConfig, replacements),
+    "appName: 'Tom & Jerry <Shop>', appSlug: 'tom---jerry--shop-'");
+});
+
+test('does not escape entities twice', () => {
+  const replacements = appReplacements({ ...app, appName: 'Tom &amp; Jerry' });
+  assert.strictEqual(substituteSentinels(GOLDEN_APP.appName, replacements, { xml: true }), 'Tom &amp; Jerry');
+});
+
+test('reports the fast path unavailable when the tools are missing', async (t) => {
+  const saved = { PATH: process.env.PATH, APKTOOL_JAR: process.env.APKTOOL_JAR, ANDROID_HOME: process.env.ANDROID_HOME, ANDROID_SDK_ROOT: process.env.ANDROID_SDK_ROOT };
+  t.after(() => {
+    for (const [name, value] of Object.entries(saved)) {
+      if (value === undefined) delete process.env[name];
+      else process.env[name] = value;
+    }
+  });
+  process.env.PATH = '';
+  delete process.env.APKTOOL_JAR;
+  delete process.env.ANDROID_HOME;
+  delete process.env.ANDROID_SDK_ROOT;
+
+  const status = await getStatus();
+  assert.strictEqual(status.available, false);
+  assert.strictEqual(status.reason, 'missing tools: apktool, zipalign, apksigner');
+});
@@ -0,0 +1,152 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const os = require('os');
+const path = require('path');
+const fs = require('fs-extra');
+const { spawnSync } = require('child_process');
+const { createKeystore, stripSignatures } = require('../signing');
+
+const PASSWORD = 'store-pass-123';
+const ALIAS = 'upload';
+
+function run(command, args, options = {}) {
+  const result = spawnSync(command, args, { encoding: 'utf8', ...options });
+  if (result.error) throw result.error;
+  return { code: result.status, output: result.stdout + result.stderr };
+}
+
+function hasTool(command, args) {
+  return !spawnSync(command, args, { stdio: 'ignore' }).error;
+}
+
+const missingJdk = !hasTool('keytool', ['-help']) || !hasTool('jarsigner', ['-help']) || !hasTool('jar', ['--version']);
+const missingOpenssl = !hasTool('openssl', ['version']);
+
+async function keystoreFixture(t) {
+  const dir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-signing-'));
+  t.after(() => fs.remove(dir));
+  const keystorePath = path.join(dir, 'release.keystore');
+  const { certificateSha256 } = await createKeystore({
+    keystorePath,
+    alias: ALIAS,
+    password: PASSWORD,
+    subject: { commonName: 'Tom & Co Shop', organization: 'Shop' }
+  });
+  return { dir, keystorePath, certificateSha256 };
+}
+
+function jarsign(keystorePath, jarPath) {
+  return run('jarsigner', ['-keystore', keystorePath, '-storetype', 'PKCS12', '-storepass', PASSWORD, '-keypass', PASSWORD, jarPath, ALIAS]);
+}
+
+function verify(jarPath) {
+  return run('jarsigner', ['-verify', jarPath]).output;
+}
+
+async function signedJar(dir, keystorePath) {
+  const contentDir = path.join(dir, 'content');
+  await fs.outputFile(path.join(contentDir, 'assets/index.html'), '<html></html>');
+  await fs.outputFile(path.join(contentDir, 'classes.dex'), Buffer.alloc(4096, 7));
+  const jarPath = path.join(dir, 'app.jar');
+  assert.strictEqual(run('jar', ['cf', jarPath, '-C', contentDir, '.']).code, 0);
+  const signed = jarsign(keystorePath, jarPath);
+  assert.strictEqual(signed.code, 0, signed.output);
+  assert.match(verify(jarPath), /jar verified/);
+  return jarPath;
+}
+
+// An APK Signing Block as apksigner writes it: between the last entry and the central directory
+async function withSigningBlock(jarPath, output) {
+  const zip = await fs.readFile(jarPath);
+  const eocd = zip.lastIndexOf(Buffer.from([0x50, 0x4b, 0x05, 0x06]));
+  const centralDirectoryOffset = zip.readUInt32LE(eocd + 16);
+  const pairs = Buffer.alloc(12 + 64);
+  pairs.writeBigUInt64LE(BigInt(4 + 64), 0);
+  pairs.writeUInt32LE(0x7109871a, 8);
+  const size = Buffer.alloc(8);
+  size.writeBigUInt64LE(BigInt(pairs.length + 8 + 16));
+  const block = Buffer.concat([size, pairs, size, Buffer.from('APK Sig Block 42')]);
+
+  const endRecord = Buffer.from(zip.subarray(eocd));
+  endRecord.writeUInt32LE(centralDirectoryOffset + block.length, 16);
+  await fs.writeFile(output, Buffer.concat([zip.subarray(0, centralDirectoryOffset), block, zip.subarray(centralDirectoryOffset, eocd), endRecord]));
+}
+
+test('writes a PKCS#12 keystore that keytool reads', { skip: missingJdk && 'JDK tools not found' }, async (t) => {
+  const { keystorePath, certificateSha256 } = await keystoreFixture(t);
+
+  const { code, output } = run('keytool', ['-list', '-v', '-keystore', keystorePath, '-storetype', 'PKCS12', '-storepass', PASSWORD]);
+  assert.strictEqual(code, 0, output);
+  assert.match(output, new RegExp(`Alias name: ${ALIAS}`));
+  assert.match(output, /Entry type: PrivateKeyEntry/);
+  assert.match(output, /CN=Tom & Co Shop/);
+  assert.match(output, /SHA256withRSA/);
+  assert.ok(output.includes(`SHA256: ${certificateSha256}`), `fingerprint ${certificateSha256} in\n${output}`);
+
+  const wrongPassword = run('keytool', ['-list', '-keystore', keystorePath, '-storetype', 'PKCS12', '-storepass', 'wrong-password']);
+  assert.notStrictEqual(wrongPassword.code, 0);
+});
+
+test('writes a PKCS#12 keystore that OpenSSL reads', { skip: missingOpenssl && 'openssl not found' }, async (t) => {
+  const { keystorePath } = await keystoreFixture(t);
+
+  const certificates = run('openssl', ['pkcs12', '-in', keystorePath, '-nokeys', '-passin', `pass:${PASSWORD}`]);
+  assert.strictEqual(certificates.code, 0, certificates.output);
+  assert.match(certificates.output, /friendlyName: upload/);
+  assert.match(certificates.output, /CN ?= ?Tom & Co Shop/);
+  assert.match(certificates.output, /BEGIN CERTIFICATE/);
+
+  const key = run('openssl', ['pkcs12', '-in', keystorePath, '-nocerts', '-nodes', '-passin', `pass:${PASSWORD}`]);
+  assert.strictEqual(key.code, 0, key.output);
+  assert.match(key.output, /BEGIN PRIVATE KEY/);
+
+  const wrongPassword = run('openssl', ['pkcs12', '-in', keystorePath, '-nokeys', '-passin', 'pass:wrong-password']);
+  assert.notStrictEqual(wrongPassword.code, 0);
+});
+
+test('gives every keystore its own key', { skip: missingJdk && 'JDK tools not found' }, async (t) => {
+  const first = await keystoreFixture(t);
+  const second = await keystoreFixture(t);
+  assert.notStrictEqual(first.certificateSha256, second.certificateSha256);
+});
+
+test('strips JAR signatures so the archive can be signed again', { skip: missingJdk && 'JDK tools not found' }, async (t) => {
+  const { dir, keystorePath } = await keystoreFixture(t);
+  const jarPath = await signedJar(dir, keystorePath);
+  const strippedPath = path.join(dir, 'stripped.jar');
+
+  await stripSignatures(jarPath, strippedPath);
+
+  const listing = run('jar', ['tf', strippedPath]).output;
+  assert.doesNotMatch(listing, /META-INF\/UPLOAD\.(SF|RSA)/);
+  assert.match(listing, /META-INF\/MANIFEST\.MF/);
+  assert.match(listing, /classes\.dex/);
+  assert.match(verify(strippedPath), /jar is unsigned/);
+
+  const resigned = jarsign(keystorePath, strippedPath);
+  assert.strictEqual(resigned.code, 0, resigned.output);
+  assert.match(verify(strippedPath), /jar verified/);
+});
+
+test('drops the APK Signing Block', { skip: missingJdk && 'JDK tools not found' }, async (t) => {
+  const { dir, keystorePath } = await keystoreFixture(t);
+  const apkPath = path.join(dir, 'app.apk');
+  await withSigningBlock(await signedJar(dir, keystorePath), apkPath);
+  const strippedPath = path.join(dir, 'stripped.apk');
+
+  await stripSignatures(apkPath, strippedPath);
+
+  const stripped = await fs.readFile(strippedPath);
+  assert.ok(!stripped.includes('APK Sig Block 42'));
+  assert.match(verify(strippedPath), /jar is unsigned/);
+  const resigned = jarsign(keystorePath, strippedPath);
+  assert.strictEqual(resigned.code, 0, resigned.output);
+  assert.match(verify(strippedPath), /jar verified/);
+});
+
+test('refuses files that are not zip archives', async (t) => {
+  const dir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-signing-'));
+  t.after(() => fs.remove(dir));
+  await fs.writeFile(path.join(dir, 'not.apk'), 'plain text');
+  await assert.rejects(stripSignatures(path.join(dir, 'not.apk'), path.join(dir, 'out.apk')), /not a zip archive/);
+});
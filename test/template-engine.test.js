@@ -0,0 +1,88 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const os = require('os');
+const path = require('path');
+const fs = require('fs-extra');
+const { TemplateEngine, ESCAPES } = require('../template-engine');
+
+test('escapes XML text and attributes', () => {
+  assert.strictEqual(ESCAPES.xml('Tom & "Jerry" <3'), 'Tom &amp; &quot;Jerry&quot; &lt;3');
+});
+
+test('escapes HTML text without touching quotes', () => {
+  assert.strictEqual(ESCAPES.html('<b>"A" & B</b>'), '&lt;b&gt;"A" &amp; B&lt;/b&gt;');
+});
+
+test('escapes Android string resources for aapt', () => {
+  assert.strictEqual(ESCAPES.androidString("Tom's \"App\""), 'Tom\\\'s \\&quot;App\\&quot;');
+  assert.strictEqual(ESCAPES.androidString('back\\slash'), 'back\\\\slash');
+  assert.strictEqual(ESCAPES.androidString('@string/x'), '\\@string/x');
+  assert.strictEqual(ESCAPES.androidString('?attr'), '\\?attr');
+  assert.strictEqual(ESCAPES.androidString('A <b> & c'), 'A &lt;b&gt; &amp; c');
+});
+
+test('escapes JSON string contents', () => {
+  const value = 'say "hi"\\\n';
+  assert.strictEqual(JSON.parse(`"${ESCAPES.json(value)}"`), value);
+});
+
+test('escapes single-quoted JavaScript strings and closing script tags', () => {
+  const escaped = ESCAPES.js("it's\\ok\n</script>");
+  assert.strictEqual(escaped, "it\\'s\\\\ok\\n<\\/script>");
+  assert.strictEqual(eval(`'${escaped}'`), "it's\\ok\n</script>");
+});
+
+test('escapes Gradle double-quoted strings, including interpolation', () => {
+  assert.strictEqual(ESCAPES.gradle('a"b\\c${evil}'), 'a\\"b\\\\c\\${evil}');
+});
+
+test('renders each placeholder with the escaping of its file and relocates Java sources', async (t) => {
+  const templateDir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-template-'));
+  const appDir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-app-'));
+  t.after(() => Promise.all([fs.remove(templateDir), fs.remove(appDir)]));
+
+  const write = (file, content) => fs.outputFile(path.join(templateDir, file), content);
+  await write('src/index.html', '<title>Starter</title>');
+  await write('android/app/src/main/res/values/strings.xml',
+    '<string name="app_name">Starter</string>\n<string name="package_name">io.ionic.starter</string>\n');
+  await write('src/assets/app-config.js', "appName: 'Starter',\nappSlug: 'starter',\nwebsiteUrl: 'https://example.com',\n");
+  await write('android/app/src/main/java/io/ionic/starter/MainActivity.java',
+    'package io.ionic.starter;\nclass MainActivity { String id = "{{PACKAGE_NAME}}"; }\n');
+
+  const engine = await new TemplateEngine(templateDir).load();
+  const manifest = await engine.render(appDir, {
+    appName: 'Tom\'s <Shop> & "Co"',
+    websiteUrl: 'https://shop.example/?a=1&b=2',
+    packageName: 'com.example.shop'
+  });
+
+  const read = file => fs.readFile(path.join(appDir, file), 'utf8');
+  assert.strictEqual(await read('src/index.html'), '<title>Tom\'s &lt;Shop&gt; &amp; "Co"</title>');
+  assert.match(await read('android/app/src/main/res/values/strings.xml'),
+    /<string name="app_name">Tom\\'s &lt;Shop&gt; &amp; \\&quot;Co\\&quot;<\/string>/);
+  const appConfig = await read('src/assets/app-config.js');
+  assert.match(appConfig, /appName: 'Tom\\'s <Shop> & "Co"'/);
+  assert.match(appConfig, /appSlug: 'tom-s--shop-----co-'/);
+  assert.match(appConfig, /websiteUrl: 'https:\/\/shop\.example\/\?a=1&b=2'/);
+
+  const java = await read('android/app/src/main/java/com/example/shop/MainActivity.java');
+  assert.strictEqual(java, 'package com.example.shop;\nclass MainActivity { String id = "com.example.shop"; }\n');
+  assert.ok(!(await fs.pathExists(path.join(appDir, 'android/app/src/main/java/io/ionic/starter/MainActivity.java'))));
+  assert.deepStrictEqual(manifest.removed, ['android/app/src/main/java/io/ionic/starter/MainActivity.java']);
+});
+
+test('writes rendered files over hard links instead of through them', async (t) => {
+  const templateDir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-template-'));
+  const appDir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-app-'));
+  t.after(() => Promise.all([fs.remove(templateDir), fs.remove(appDir)]));
+
+  await fs.outputFile(path.join(templateDir, 'src/index.html'), '<title>Starter</title>');
+  await fs.ensureDir(path.join(appDir, 'src'));
+  await fs.link(path.join(templateDir, 'src/index.html'), path.join(appDir, 'src/index.html'));
+
+  const engine = await new TemplateEngine(templateDir).load();
+  await engine.render(appDir, { appName: 'Shop', websiteUrl: 'https://shop.example', packageName: 'com.example.shop' });
+
+  assert.strictEqual(await fs.readFile(path.join(templateDir, 'src/index.html'), 'utf8'), '<title>Starter</title>');
+  assert.strictEqual(await fs.readFile(path.join(appDir, 'src/index.html'), 'utf8'), '<title>Shop</title>');
+});
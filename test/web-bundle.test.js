@@ -0,0 +1,41 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const os = require('os');
+const path = require('path');
+const fs = require('fs-extra');
+const { pruneBundles, webVersion } = require('../web-bundle');
+
+test('derives a stable short version from the template', async () => {
+  const version = await webVersion();
+  assert.match(version, /^[0-9a-f]{16}$/);
+  assert.strictEqual(await webVersion(), version);
+});
+
+test('prunes old bundles but keeps the current one, the newest spare and any an app links to', async (t) => {
+  const root = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-bundles-'));
+  t.after(() => fs.remove(root));
+  const bundlesDir = path.join(root, 'web-bundles');
+  const appsDir = path.join(root, 'generated-apps');
+  const cacheDir = path.join(root, 'build-cache');
+
+  const now = Date.now() / 1000;
+  const versions = ['oldest', 'linked-by-app', 'linked-by-cache', 'old', 'spare', 'current'];
+  for (const [i, version] of versions.entries()) {
+    await fs.ensureDir(path.join(bundlesDir, version, 'node_modules'));
+    await fs.utimes(path.join(bundlesDir, version), now - 1000 + i, now - 1000 + i);
+  }
+  await fs.ensureDir(path.join(bundlesDir, 'building.123.tmp'));
+
+  const linkApp = async (appDir, version) => {
+    await fs.ensureDir(appDir);
+    await fs.symlink(path.join(bundlesDir, version, 'node_modules'), path.join(appDir, 'node_modules'), 'dir');
+  };
+  await linkApp(path.join(appsDir, 'app-1'), 'linked-by-app');
+  await linkApp(path.join(cacheDir, 'entry-1'), 'linked-by-cache');
+  await fs.ensureDir(path.join(appsDir, 'app-without-modules'));
+
+  await pruneBundles('current', { bundlesDir, appRoots: [appsDir, cacheDir, path.join(root, 'missing')] });
+
+  assert.deepStrictEqual((await fs.readdir(bundlesDir)).sort(),
+    ['building.123.tmp', 'current', 'linked-by-app', 'linked-by-cache', 'spare']);
+});
@@ -0,0 +1,47 @@
+const test = require('node:test');
+const assert = require('node:assert');
+const os = require('os');
+const path = require('path');
+const fs = require('fs-extra');
+const { createWorkspace, isWritable } = require('../workspace');
+
+test('treats listed files and directories as writable', () => {
+  assert.ok(isWritable('capacitor.config.ts'));
+  assert.ok(isWritable('android/app/build.gradle'));
+  assert.ok(isWritable('android/app/src/main/res/values/strings.xml'));
+  assert.ok(isWritable('android/capacitor-cordova-android-plugins/build.gradle'));
+  assert.ok(!isWritable('android/build.gradle'));
+  assert.ok(!isWritable('android/app/build.gradle.kts'));
+  assert.ok(!isWritable('src/app/app.component.ts'));
+});
+
+test('links read-only files, copies writable ones and leaves out build output and unused platforms', async (t) => {
+  const templateDir = await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-template-'));
+  const appDir = path.join(await fs.mkdtemp(path.join(os.tmpdir(), 'ezgen-app-')), 'app');
+  t.after(() => Promise.all([fs.remove(templateDir), fs.remove(path.dirname(appDir))]));
+
+  const write = (file, content = file) => fs.outputFile(path.join(templateDir, file), content);
+  await write('src/app/app.component.ts');
+  await write('capacitor.config.ts');
+  await write('android/build.gradle');
+  await write('android/app/build.gradle');
+  await write('android/app/build/outputs/apk/debug/app-debug.apk');
+  await write('android/app/src/main/assets/public/index.html');
+  await write('node_modules/pkg/index.js');
+  await write('ios/App/App/AppDelegate.swift');
+
+  const stats = await createWorkspace(templateDir, appDir, { platforms: ['android'] });
+
+  const inode = async (root, file) => (await fs.stat(path.join(root, file))).ino;
+  for (const file of ['src/app/app.component.ts', 'android/build.gradle']) {
+    assert.strictEqual(await inode(appDir, file), await inode(templateDir, file), `${file} is linked`);
+  }
+  for (const file of ['capacitor.config.ts', 'android/app/build.gradle']) {
+    assert.notStrictEqual(await inode(appDir, file), await inode(templateDir, file), `${file} is copied`);
+    assert.strictEqual(await fs.readFile(path.join(appDir, file), 'utf8'), file);
+  }
+  for (const skipped of ['android/app/build', 'android/app/src/main/assets/public', 'node_modules', 'ios']) {
+    assert.ok(!(await fs.pathExists(path.join(appDir, skipped))), `${skipped} is left out`);
+  }
+  assert.deepStrictEqual(stats, { linked: 2, copied: 2 });
+});
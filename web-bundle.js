@@ -0,0 +1,192 @@
+/**
+ * Shared web layer for EZ-GEN
+ *
+ * The Angular shell is identical for every generated app; only the app name, slug and website
+ * URL differ, and those are read at runtime from assets/app-config.js. So npm install and ng build
+ * run once per template version into web-bundles/<version>/ (node_modules + www), and each app
+ * links the shared node_modules read-only, copies the small www output and writes its own
+ * app-config.js and document title into it.
+ *
+ * The version is a hash of everything the web build reads (package files, Angular/TypeScript
+ * config, src/), so editing the template produces a new bundle on the next build. Older bundles
+ * are only pruned once no generated app or build cache entry links its node_modules to them.
+ */
+
+const path = require('path');
+const crypto = require('crypto');
+const fs = require('fs-extra');
+const { spawn } = require('child_process');
+
+const BUNDLES_DIR = path.join(__dirname, 'web-bundles');
+const TEMPLATE_DIR = path.join(__dirname, 'templates', 'ionic-webview-template');
+// What npm install and ng build read; app-config.js is per app and replaced after the build
+const WEB_INPUTS = ['package.json', 'package-lock.json', 'angular.json', 'tsconfig.json', 'tsconfig.app.json', '.browserslistrc', 'src'];
+const PER_APP_FILES = new Set(['src/assets/app-config.js']);
+// Unused bundles of older template versions kept around besides the current one
+const KEEP_VERSIONS = 2;
+// Directories holding app projects whose node_modules may link to a bundle
+const APP_ROOTS = [path.join(__dirname, 'generated-apps'), path.join(__dirname, 'build-cache')];
+
+// Builds in progress per version, so concurrent jobs wait for the same build
+const building = new Map();
+
+function runNpm(args, cwd, log) {
+  return new Promise((resolve, reject) => {
+    const npmCmd = process.platform === 'win32' ? 'npm.cmd' : 'npm';
+    const proc = spawn(npmCmd, args, { cwd, shell: true, stdio: 'pipe' });
+    let output = '';
+    const collect = (data) => {
+      output += data.toString();
+      if (output.length > 20000) output = output.slice(-10000);
+    };
+    proc.stdout.on('data', collect);
+    proc.stderr.on('data', collect);
+    proc.on('error', reject);
+    proc.on('close', (code) => {
+      if (code === 0) return resolve();
+      log(`❌ npm ${args.join(' ')} failed:\n${output.slice(-2000)}`, 'error');
+      reject(new Error(`npm ${args.join(' ')} failed with code ${code}`));
+    });
+  });
+}
+
+async function webVersion() {
+  const hash = crypto.createHash('sha256');
+  const walk = async (relativePath) => {
+    const fullPath = path.join(TEMPLATE_DIR, relativePath);
+    if (!(await fs.pathExists(fullPath))) return;
+    const stat = await fs.stat(fullPath);
+    if (stat.isDirectory()) {
+      for (const name of (await fs.readdir(fullPath)).sort()) {
+        await walk(path.join(relativePath, name));
+      }
+    } else if (!PER_APP_FILES.has(relativePath.replace(/\\/g, '/'))) {
+      hash.update(relativePath.replace(/\\/g, '/') + '\n');
+      hash.update(await fs.readFile(fullPath));
+    }
+  };
+  for (const input of WEB_INPUTS) {
+    await walk(input);
+  }
+  hash.update(`node:${process.versions.node.split('.')[0]}\n`);
+  return hash.digest('hex').slice(0, 16);
+}
+
+async function isComplete(bundleDir) {
+  return (await fs.pathExists(path.join(bundleDir, 'www', 'index.html')))
+    && (await fs.pathExists(path.join(bundleDir, 'node_modules')));
+}
+
+async function buildBundle(version, bundleDir, log) {
+  const stagingDir = `${bundleDir}.${process.pid}.tmp`;
+  await fs.remove(stagingDir);
+  await fs.ensureDir(stagingDir);
+  for (const input of WEB_INPUTS) {
+    const source = path.join(TEMPLATE_DIR, input);
+    if (await fs.pathExists(source)) {
+      await fs.copy(source, path.join(stagingDir, input));
+    }
+  }
+
+  try {
+    const hasLockfile = await fs.pathExists(path.join(stagingDir, 'package-lock.json'));
+    log(`📦 Installing shared node_modules for web bundle ${version}...`, 'info');
+    await runNpm([hasLockfile ? 'ci' : 'install'], stagingDir, log);
+    log(`🏗️ Building shared web bundle ${version}...`, 'info');
+    await runNpm(['run', 'build'], stagingDir, log);
+
+    // Only the outputs are needed from here on
+    await fs.remove(path.join(stagingDir, 'src'));
+    await fs.remove(path.join(stagingDir, '.angular'));
+    await fs.remove(bundleDir);
+    await fs.move(stagingDir, bundleDir);
+  } catch (error) {
+    await fs.remove(stagingDir).catch(() => {});
+    throw error;
+  }
+
+  await pruneBundles(version);
+  log(`✅ Web bundle ${version} ready`, 'success');
+  return bundleDir;
+}
+
+// Bundle versions some app's node_modules link points into
+async function linkedVersions(bundlesDir, appRoots) {
+  const versions = new Set();
+  for (const root of appRoots) {
+    for (const name of await fs.readdir(root).catch(() => [])) {
+      const target = await fs.readlink(path.join(root, name, 'node_modules')).catch(() => null);
+      if (!target) continue;
+      const relative = path.relative(bundlesDir, path.resolve(root, name, target));
+      if (relative && !relative.startsWith('..') && !path.isAbsolute(relative)) {
+        versions.add(relative.split(path.sep)[0]);
+      }
+    }
+  }
+  return versions;
+}
+
+// Oldest unused bundles first; one that an app directory still links to is never removed
+async function pruneBundles(currentVersion, { bundlesDir = BUNDLES_DIR, appRoots = APP_ROOTS } = {}) {
+  const linked = await linkedVersions(bundlesDir, appRoots);
+  const bundles = [];
+  for (const name of await fs.readdir(bundlesDir)) {
+    if (name === currentVersion || name.endsWith('.tmp') || linked.has(name)) continue;
+    const stat = await fs.stat(path.join(bundlesDir, name));
+    if (stat.isDirectory()) bundles.push({ name, mtimeMs: stat.mtimeMs });
+  }
+  bundles.sort((a, b) => b.mtimeMs - a.mtimeMs);
+  for (const bundle of bundles.slice(KEEP_VERSIONS - 1)) {
+    await fs.remove(path.join(bundlesDir, bundle.name)).catch(() => {});
+  }
+}
+
+/**
+ * Directory of the web bundle for the current template, building it first if needed
+ */
+async function ensureBundle(log = () => {}) {
+  await fs.ensureDir(BUNDLES_DIR);
+  const version = await webVersion();
+  const bundleDir = path.join(BUNDLES_DIR, version);
+  if (await isComplete(bundleDir)) {
+    return bundleDir;
+  }
+  if (!building.has(version)) {
+    building.set(version, buildBundle(version, bundleDir, log).finally(() => building.delete(version)));
+  }
+  return building.get(version);
+}
+
+/**
+ * Give an app directory the shared node_modules and the prebuilt www, with its own
+ * app-config.js (written to src/assets by updateAppConfig) and title
+ */
+async function install(appDir, log = () => {}) {
+  const bundleDir = await ensureBundle(log);
+
+  const nodeModulesPath = path.join(appDir, 'node_modules');
+  await fs.remove(nodeModulesPath);
+  await fs.symlink(path.join(bundleDir, 'node_modules'), nodeModulesPath, process.platform === 'win32' ? 'junction' : 'dir');
+
+  const wwwDir = path.join(appDir, 'www');
+  await fs.remove(wwwDir);
+  await fs.copy(path.join(bundleDir, 'www'), wwwDir);
+  await fs.copy(path.join(appDir, 'src', 'assets', 'app-config.js'), path.join(wwwDir, 'assets', 'app-config.js'));
+
+  const appIndexHtml = await fs.readFile(path.join(appDir, 'src', 'index.html'), 'utf8');
+  const title = appIndexHtml.match(/<title>.*?<\/title>/);
+  if (title) {
+    const indexHtmlPath = path.join(wwwDir, 'index.html');
+    const indexHtml = await fs.readFile(indexHtmlPath, 'utf8');
+    await fs.writeFile(indexHtmlPath, indexHtml.replace(/<title>.*?<\/title>/, () => title[0]));
+  }
+
+  return path.basename(bundleDir);
+}
+
+module.exports = {
+  ensureBundle,
+  install,
+  pruneBundles,
+  webVersion
+};
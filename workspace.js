@@ -0,0 +1,113 @@
+/**
+ * Per-app workspaces for EZ-GEN
+ *
+ * Deep-copying the template for every job wrote the whole tree again, including the platforms
+ * the job never builds and whatever build output was left in the template. A workspace now
+ * shares the template's bytes: files that are only ever read are hard-linked, and files the
+ * generator or the Capacitor tooling rewrites get their own copy (a reflink where the
+ * filesystem supports it, so even those cost no data blocks on btrfs, XFS or APFS).
+ *
+ * Hard-linked files are the template's own inodes. Anything written in place must be listed in
+ * WRITABLE_PATHS, otherwise the write would land in the template.
+ */
+
+const path = require('path');
+const nodeFs = require('fs');
+const fs = require('fs-extra');
+
+// Build output, dependencies and IDE state are never part of a workspace
+const SKIP_DIRS = new Set(['node_modules', 'www', '.angular', '.gradle', '.idea', 'build', 'dist']);
+// Web assets a previous cap sync left in the template; each app syncs its own
+const SKIP_PATHS = new Set(['android/app/src/main/assets/public', 'ios/App/App/public']);
+const PLATFORM_DIRS = ['android', 'ios'];
+
+// Files and directories (trailing slash) written in place during generation
+const WRITABLE_PATHS = [
+  // updateAppConfig
+  'capacitor.config.ts',
+  'package.json',
+  'ionic.config.json',
+  'src/index.html',
+  'src/assets/app-config.js',
+  'resources/',
+  'android/app/build.gradle',
+  'android/app/google-services.json',
+  'android/baselineprofile/build.gradle',
+  // Java sources, resources (strings, config, network security config, icons) and web assets
+  'android/app/src/main/',
+  // fixGradlewLineEndings and fixAndroidConfigPaths
+  'android/gradlew',
+  'android/local.properties',
+  // npx cap sync
+  'android/capacitor.settings.gradle',
+  'android/app/capacitor.build.gradle',
+  'android/capacitor-cordova-android-plugins/',
+  'ios/App/'
+];
+
+function isWritable(relativePath) {
+  return WRITABLE_PATHS.some(writable => writable.endsWith('/')
+    ? relativePath.startsWith(writable)
+    : relativePath === writable);
+}
+
+// Reflink when the filesystem can, a plain copy otherwise
+async function copyFile(source, destination) {
+  await fs.copyFile(source, destination, nodeFs.constants.COPYFILE_FICLONE);
+}
+
+async function linkFile(source, destination) {
+  try {
+    await fs.link(source, destination);
+    return true;
+  } catch (error) {
+    if (!['EXDEV', 'EPERM', 'EMLINK', 'ENOTSUP'].includes(error.code)) throw error;
+    await copyFile(source, destination);
+    return false;
+  }
+}
+
+/**
+ * Create appDir from templateDir with only the given platforms.
+ * Returns how many files were linked and copied.
+ */
+async function createWorkspace(templateDir, appDir, { platforms = PLATFORM_DIRS } = {}) {
+  const stats = { linked: 0, copied: 0 };
+
+  const walk = async (relativeDir) => {
+    const sourceDir = path.join(templateDir, relativeDir);
+    const destinationDir = path.join(appDir, relativeDir);
+    await fs.ensureDir(destinationDir);
+
+    for (const entry of await fs.readdir(sourceDir, { withFileTypes: true })) {
+      const relativePath = relativeDir ? `${relativeDir}/${entry.name}` : entry.name;
+      const sourcePath = path.join(sourceDir, entry.name);
+      const destinationPath = path.join(destinationDir, entry.name);
+
+      if (entry.isDirectory()) {
+        if (SKIP_DIRS.has(entry.name) || SKIP_PATHS.has(relativePath)) continue;
+        if (!relativeDir && PLATFORM_DIRS.includes(entry.name) && !platforms.includes(entry.name)) continue;
+        await walk(relativePath);
+      } else if (entry.isSymbolicLink()) {
+        await fs.symlink(await fs.readlink(sourcePath), destinationPath);
+      } else if (entry.isFile()) {
+        if (isWritable(relativePath)) {
+          await copyFile(sourcePath, destinationPath);
+          stats.copied++;
+        } else if (await linkFile(sourcePath, destinationPath)) {
+          stats.linked++;
+        } else {
+          stats.copied++;
+        }
+      }
+    }
+  };
+
+  await walk('');
+  return stats;
+}
+
+module.exports = {
+  createWorkspace,
+  isWritable
+};